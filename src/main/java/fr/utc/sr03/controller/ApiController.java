@@ -1,18 +1,24 @@
 package fr.utc.sr03.controller;
 
+import fr.utc.sr03.model.Avatar;
 import fr.utc.sr03.model.Channel;
 import fr.utc.sr03.model.Member;
 import fr.utc.sr03.model.User;
 import fr.utc.sr03.services.*;
 import jakarta.annotation.Resource;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 // La classe APIController a pour but de permettre au front React d'interagir avec la base de données.
 @RestController
@@ -21,96 +27,207 @@ public class ApiController {
     @Resource
     private ServicesRequest servicesRequest;
 
+    @Resource
+    private AvatarStore avatarStore;
+
+    @Resource
+    private UserSearchIndex userSearchIndex;
+
+    @Resource
+    private AccessTokenService accessTokenService;
+
+    @Resource
+    private PasswordHasher passwordHasher;
+
+    @Resource
+    private MembershipIndex membershipIndex;
+
     // Vérifie les identifiants de connexion d'un utilisateur.
+    // En cas de succès, l'utilisateur renvoyé porte un jeton d'accès pour les appels API et WebSocket suivants.
+    // Le hash est vérifié sur le pool de PasswordHasher : le thread de la requête est libéré pendant le calcul.
+    // Si le hash enregistré n'a pas le coût configuré, il est recalculé en arrière-plan.
     @PostMapping("/api/users/login")
-    public UserDTO verifyUser(@RequestBody LoginDTO login) {
-        return servicesRequest.verifyUser(login.getMail(), login.getPassword());
+    public CompletableFuture<ResponseEntity<?>> verifyUser(@RequestBody LoginDTO login) {
+        User user = servicesRequest.findByEmailOrNull(login.getMail());
+        if (user == null || login.getPassword() == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.ok().build());
+        }
+
+        String storedHash = user.getPassword();
+        return passwordHasher.verify(login.getPassword(), storedHash)
+                .<ResponseEntity<?>>thenApply(valid -> {
+                    if (!valid) return ResponseEntity.ok().build();
+
+                    if (passwordHasher.needsUpgrade(storedHash)) {
+                        passwordHasher.hash(login.getPassword()).thenAccept(newHash -> {
+                            if (servicesRequest.updatePasswordHash(user.getMail(), storedHash, newHash)) {
+                                passwordHasher.recordUpgrade();
+                            }
+                        });
+                    }
+
+                    UserDTO dto = servicesRequest.toUserDTO(user);
+                    dto.setToken(accessTokenService.issue(dto.getUsersID(), dto.isAdmin()));
+                    return ResponseEntity.ok(dto);
+                })
+                .exceptionally(ApiController::passwordHasherBusy);
     }
 
     // Crée un nouvel utilisateur après vérification des données.
     // Renvoie l'utilisateur créé en cas de succès, et une erreur sinon.
     @PostMapping("/api/users/self-signup")
-    public ResponseEntity<?> createUser(@RequestBody UserDTO userDTO) throws IOException {
+    public CompletableFuture<ResponseEntity<?>> createUser(@RequestBody UserDTO userDTO) throws IOException {
 
         // Vérification du mot de passe.
         if (!servicesRequest.isPasswordValid(userDTO.getPassword())) {
-            return ResponseEntity
+            return CompletableFuture.completedFuture(ResponseEntity
+                    .badRequest()
+                    .body(new ErrorResponse("Le mot de passe ne respecte pas les règles.")));
+        }
+
+        // On évite de calculer un hash pour un email déjà utilisé.
+        if (servicesRequest.emailExists(userDTO.getMail())) {
+            return CompletableFuture.completedFuture(ResponseEntity
                     .badRequest()
-                    .body(new ErrorResponse("Le mot de passe ne respecte pas les règles."));
+                    .body(new ErrorResponse("Email déjà utilisé.")));
         }
 
         User user = new User();
         user.setFirstName(userDTO.getFirstName());
         user.setLastName(userDTO.getLastName());
         user.setMail(userDTO.getMail());
-        user.setPassword(userDTO.getPassword());
-        user.setAdmin(userDTO.isAdmin());
+        // Un compte créé par inscription n'est jamais administrateur (seul un administrateur peut en nommer un).
+        user.setAdmin(false);
 
-        // Ajout d'un avatar par défaut si non fourni.
+        // Enregistrement de l'avatar fourni, ou de l'avatar par défaut (partagé) si non fourni.
         if (userDTO.getAvatarBase64() != null && !userDTO.getAvatarBase64().isEmpty()) {
-            user.setAvatar(userDTO.getAvatarBase64());
+            try {
+                user.setAvatarHash(avatarStore.storeBase64(userDTO.getAvatarBase64()));
+            } catch (IllegalArgumentException e) {
+                return CompletableFuture.completedFuture(ResponseEntity
+                        .badRequest()
+                        .body(new ErrorResponse("Avatar invalide.")));
+            }
         } else {
-            ClassPathResource imgFile = new ClassPathResource("static/img/avatar_base.jpg");
-            if (!imgFile.exists()) {
-                return ResponseEntity
+            String defaultHash = avatarStore.getDefaultAvatarHash();
+            if (defaultHash == null) {
+                return CompletableFuture.completedFuture(ResponseEntity
                         .status(500)
-                        .body(new ErrorResponse("Fichier avatar par défaut introuvable."));
-            }
-            try (InputStream inputStream = imgFile.getInputStream()) {
-                byte[] imageBytes = inputStream.readAllBytes();
-                user.setAvatar(Base64.getEncoder().encodeToString(imageBytes));
+                        .body(new ErrorResponse("Fichier avatar par défaut introuvable.")));
             }
+            user.setAvatarHash(defaultHash);
         }
 
-        // Si l'utilisateur ne peut pas être ajouté, c'est que l'email est déjà utilisé.
-        if (!servicesRequest.addUser(user)) {
-            return ResponseEntity
-                    .badRequest()
-                    .body(new ErrorResponse("Email déjà utilisé."));
-        }
+        // Le mot de passe est hashé sur le pool de PasswordHasher, puis l'utilisateur est enregistré.
+        return passwordHasher.hash(userDTO.getPassword())
+                .<ResponseEntity<?>>thenApply(hash -> {
+                    user.setPassword(hash);
 
-        User createdUser = servicesRequest.findByEmail(user.getMail());
+                    // Si l'utilisateur ne peut pas être ajouté, c'est que l'email est déjà utilisé.
+                    if (!servicesRequest.addUser(user)) {
+                        return ResponseEntity
+                                .badRequest()
+                                .body(new ErrorResponse("Email déjà utilisé."));
+                    }
 
-        UserDTO responseDTO = new UserDTO(
-                createdUser.getUsersID(),
-                createdUser.getFirstName(),
-                createdUser.getLastName(),
-                createdUser.getMail(),
-                "",
-                createdUser.isAdmin(),
-                createdUser.getAvatar()
-        );
+                    UserDTO responseDTO = servicesRequest.toUserDTO(user);
+                    responseDTO.setToken(accessTokenService.issue(user.getUsersID(), user.isAdmin()));
 
-        return ResponseEntity.ok(responseDTO);
+                    return ResponseEntity.ok(responseDTO);
+                })
+                .exceptionally(ApiController::passwordHasherBusy);
     }
 
-    // Récupère un canal par son ID.
+    // Récupère un utilisateur par son ID (sans mot de passe ni image).
     @GetMapping("/api/users/{userId}")
-    public User getUser(@PathVariable int userId) {
-        return servicesRequest.findUserById(userId);
+    public ResponseEntity<UserSummaryDTO> getUser(@PathVariable int userId) {
+        UserSummaryDTO user = servicesRequest.getUserSummary(userId);
+        return user != null ? ResponseEntity.ok(user) : ResponseEntity.notFound().build();
+    }
+
+    // Renvoie en une seule requête tout ce qu'affiche l'écran d'accueil du front : l'utilisateur, ses canaux
+    // (créés ou invitations en cours), son rôle dans chacun, leur nombre de membres et un aperçu de ces membres.
+    // Seul l'utilisateur lui-même peut le demander.
+    @GetMapping("/api/users/{userId}/bootstrap")
+    public ResponseEntity<UserBootstrapDTO> getUserBootstrap(
+            @PathVariable int userId,
+            @RequestParam(defaultValue = "5") int previewSize
+    ) {
+        if (!isCaller(userId)) return forbidden();
+
+        UserBootstrapDTO bootstrap = servicesRequest.getUserBootstrap(userId, Math.max(0, Math.min(previewSize, 50)));
+        return bootstrap != null ? ResponseEntity.ok(bootstrap) : ResponseEntity.notFound().build();
+    }
+
+    // Renvoie l'image d'un avatar à partir de son empreinte.
+    // Avec le paramètre 'size' (32, 64 ou 128), renvoie la miniature carrée correspondante au lieu de l'image d'origine.
+    // Le contenu d'une empreinte ne change jamais : la réponse peut être mise en cache indéfiniment.
+    @GetMapping("/api/avatars/{hash}")
+    public ResponseEntity<byte[]> getAvatar(
+            @PathVariable String hash,
+            @RequestParam(required = false) Integer size,
+            WebRequest request
+    ) {
+        String etag = size != null ? hash + "-" + AvatarThumbnailer.closestSize(size) : hash;
+
+        // Si le client a déjà cette version, on répond 304 sans lire la BDD.
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+
+        String contentType;
+        byte[] data;
+        if (size != null) {
+            AvatarStore.AvatarImage thumbnail = avatarStore.getThumbnail(hash, size);
+            if (thumbnail == null) {
+                return ResponseEntity.notFound().build();
+            }
+            contentType = thumbnail.contentType();
+            data = thumbnail.data();
+        } else {
+            Avatar avatar = avatarStore.find(hash);
+            if (avatar == null) {
+                return ResponseEntity.notFound().build();
+            }
+            contentType = avatar.getContentType();
+            data = avatar.getData();
+        }
+
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable())
+                .contentType(MediaType.parseMediaType(contentType))
+                .body(data);
     }
 
-    // Recherche des utilisateurs qui contiennent une certaine chaîne de caractères dans leur nom complet.
+    // Recherche des utilisateurs dont le prénom, le nom ou le mail commence par les mots saisis.
+    // Les résultats sont classés et limités (10 par défaut, 50 au maximum), sans mot de passe ni image.
     @GetMapping("/api/users/search")
-    public List<UserDTO> searchUsers(@RequestParam String query) {
-        return servicesRequest.searchUsers(query);
+    public List<UserDTO> searchUsers(@RequestParam String query, @RequestParam(defaultValue = "10") int limit) {
+        return userSearchIndex.search(query, Math.max(1, Math.min(limit, 50)));
     }
 
-    // Liste des canaux auxquels l'utilisateur appartient.
+    // Liste des canaux auxquels l'utilisateur appartient (seulement pour l'utilisateur lui-même).
     @GetMapping("/api/users/channels/membership")
-    public List<Channel> getUsersMemberships(@RequestParam("userId") int userId){
-        return servicesRequest.getUsersMemberships(userId);
+    public ResponseEntity<List<ChannelSummaryDTO>> getUsersMemberships(@RequestParam("userId") int userId){
+        if (!isCaller(userId)) return forbidden();
+        return ResponseEntity.ok(servicesRequest.getUsersMemberships(userId));
     }
 
-    // Liste des canaux créés par l'utilisateur.
+    // Liste des canaux créés par l'utilisateur (seulement pour l'utilisateur lui-même).
     @GetMapping("/api/users/channels/ownership")
-    public List<Channel> getUsersOwnerships(@RequestParam("userId") int userId) {
-        return servicesRequest.getUsersOwnerships(userId);
+    public ResponseEntity<List<ChannelSummaryDTO>> getUsersOwnerships(@RequestParam("userId") int userId) {
+        if (!isCaller(userId)) return forbidden();
+        return ResponseEntity.ok(servicesRequest.getUsersOwnerships(userId));
     }
 
     // Crée un nouveau canal et ajoute l'utilisateur en tant que créateur.
+    // L'utilisateur indiqué doit être celui du jeton d'accès.
     @PostMapping("/api/channels")
-    public void createChannel(@RequestBody ChannelDTO channelDTO, @RequestParam("idUser") int idUser) throws ParseException {
+    public ResponseEntity<?> createChannel(@RequestBody ChannelDTO channelDTO, @RequestParam("idUser") int idUser)
+            throws ParseException {
+        if (!isCaller(idUser)) return forbidden();
+
         Channel ch = new Channel();
         ch.setTitle(channelDTO.getTitle());
         ch.setDescription(channelDTO.getDescription());
@@ -126,47 +243,107 @@ public class ApiController {
         member.setChannelID(ch.getChannelId());
 
         servicesRequest.addMember(member);
+        return ResponseEntity.ok().build();
     }
 
     // Récupère tous les canaux existants.
     @GetMapping("/api/channels")
-    public List<Channel> getChannels() {
+    public List<ChannelSummaryDTO> getChannels() {
         return servicesRequest.getChannels();
     }
 
-    // Récupère un canal par son ID.
+    // Récupère un canal par son ID (404 s'il n'existe pas).
     @GetMapping("/api/channels/{channelId}")
-    public Channel getChannel(@PathVariable int channelId) {
-        return servicesRequest.getChannelById(channelId);
+    public ResponseEntity<ChannelSummaryDTO> getChannel(@PathVariable int channelId) {
+        ChannelSummaryDTO channel = servicesRequest.getChannelSummary(channelId);
+        return channel != null ? ResponseEntity.ok(channel) : ResponseEntity.notFound().build();
+    }
+
+    // Récupère une page de l'historique des messages d'un canal, du plus récent au plus ancien.
+    // Le curseur 'before' est celui renvoyé par la page précédente (absent pour la première page).
+    // Réservé aux membres du canal (sans jeton, possible seulement avec chat.security.require-token=false,
+    // la requête est acceptée comme sur les autres routes).
+    @GetMapping("/api/channels/{channelId}/messages")
+    public ResponseEntity<?> getChannelMessages(
+            @PathVariable int channelId,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "50") int limit
+    ) {
+        if (!isCallerMemberOf(channelId)) return forbidden();
+
+        // Le nombre de messages par page est borné.
+        int pageSize = Math.max(1, Math.min(limit, 200));
+
+        // Décodage du curseur "<timestamp en ms>_<id du message>".
+        Calendar beforeTimestamp = null;
+        Long beforeId = null;
+        if (before != null && !before.isEmpty()) {
+            try {
+                String[] parts = before.split("_");
+                beforeTimestamp = Calendar.getInstance();
+                beforeTimestamp.setTimeInMillis(Long.parseLong(parts[0]));
+                beforeId = Long.parseLong(parts[1]);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                return ResponseEntity.badRequest().body(new ErrorResponse("Curseur invalide."));
+            }
+        }
+
+        // On demande un message de plus que la taille de la page pour savoir s'il en reste.
+        List<MessageDTO> messages = servicesRequest.getChannelMessages(channelId, beforeTimestamp, beforeId, pageSize + 1);
+
+        String nextCursor = null;
+        if (messages.size() > pageSize) {
+            messages = messages.subList(0, pageSize);
+            MessageDTO last = messages.get(pageSize - 1);
+            nextCursor = last.getTimestamp().getTimeInMillis() + "_" + last.getMessageID();
+        }
+
+        return ResponseEntity.ok(new MessagePageDTO(messages, nextCursor));
     }
 
-    // Vérifie si un utilisateur est le créateur d’un canal.
+    // Vérifie si l'utilisateur (celui du jeton d'accès) est le créateur d’un canal.
     @GetMapping("/api/channels/is-creator")
-    @ResponseBody
-    public boolean isCreatorOfChannel(@RequestParam int channelID, @RequestParam int userID) {
-        return servicesRequest.isCreatorOfChannel(userID, channelID);
+    public ResponseEntity<Boolean> isCreatorOfChannel(@RequestParam int channelID, @RequestParam int userID) {
+        if (!isCaller(userID)) return forbidden();
+        return ResponseEntity.ok(servicesRequest.isCreatorOfChannel(userID, channelID));
     }
 
-    // Ajoute une liste de membres à un canal.
+    // Ajoute une liste de membres à un canal, en une seule transaction et par lots.
+    // Seul le créateur d'un canal peut y ajouter des membres, et ils y sont ajoutés en tant que simples membres.
+    // Renvoie le nombre de membres ajoutés et ignorés (déjà membres ou en double).
     @PostMapping("/api/channels/members")
-    public void addMembers(@RequestBody List<MemberDTO> members) {
+    public ResponseEntity<?> addMembers(@RequestBody List<MemberDTO> members) {
+        Set<Integer> channelIds = new HashSet<>();
+        for (MemberDTO memberDTO : members) {
+            channelIds.add(memberDTO.getChannelID());
+        }
+        for (int channelId : channelIds) {
+            if (!isCallerCreatorOf(channelId)) return forbidden();
+        }
+
+        Calendar now = Calendar.getInstance();
+        List<Member> toAdd = new ArrayList<>(members.size());
         for (MemberDTO memberDTO : members) {
             Member member = new Member();
             member.setUserID(memberDTO.getUserID());
             member.setChannelID(memberDTO.getChannelID());
-            member.setJoinDate(Calendar.getInstance());
-            member.setCreator(memberDTO.isCreator());
-            servicesRequest.addMember(member);
+            member.setJoinDate((Calendar) now.clone());
+            member.setCreator(false);
+            toAdd.add(member);
         }
+
+        int added = servicesRequest.addMembers(toAdd);
+        return ResponseEntity.ok(Map.of("added", added, "skipped", members.size() - added));
     }
 
-    // Liste les membres d’un canal donné.
+    // Liste les membres d’un canal donné (réservé aux membres du canal).
     @GetMapping("/api/channels/members")
-    public List<User> getMembers(@RequestParam("idChannel") int idChannel) {
-        return servicesRequest.getChannelsMembers(idChannel);
+    public ResponseEntity<List<UserSummaryDTO>> getMembers(@RequestParam("idChannel") int idChannel) {
+        if (!isCallerMemberOf(idChannel)) return forbidden();
+        return ResponseEntity.ok(servicesRequest.getChannelsMembers(idChannel));
     }
 
-    // Supprime un membre d’un canal.
+    // Supprime un membre d’un canal : un utilisateur peut quitter un canal, et le créateur peut en retirer un membre.
     @DeleteMapping("/api/channels/members")
     public ResponseEntity<?> removeMember(@RequestBody Map<String, Object> body) {
 
@@ -188,12 +365,14 @@ public class ApiController {
                 ? ((Number) channelIdObj).intValue()
                 : Integer.parseInt(channelIdObj.toString());
 
-        // Appel de la requête de suppression du membre.
-        servicesRequest.removeMemberFromChannel(channelId, userId);
-        return ResponseEntity.ok().build();
+        if (!isCaller(userId) && !isCallerCreatorOf(channelId)) return forbidden();
+
+        // Appel de la requête de suppression du membre (404 si l'utilisateur n'est pas membre du canal).
+        boolean removed = servicesRequest.removeMemberFromChannel(channelId, userId);
+        return removed ? ResponseEntity.ok().build() : ResponseEntity.notFound().build();
     }
 
-    // Supprime un canal par son ID.
+    // Supprime un canal par son ID (réservé à son créateur).
     @DeleteMapping("/api/channels")
     public ResponseEntity<?> deleteChannel(@RequestBody Map<String, Object> body) {
 
@@ -210,8 +389,48 @@ public class ApiController {
                 ? ((Number) channelIdObj).intValue()
                 : Integer.parseInt(channelIdObj.toString());
 
+        if (!isCallerCreatorOf(channelId)) return forbidden();
+
         // Appel de la requête de suppression du canal.
         servicesRequest.deleteChannelById(channelId);
         return ResponseEntity.ok().build();
     }
+
+    // Méthodes privées :
+
+    // Vérifie que la requête agit pour l'utilisateur 'userId', c'est-à-dire que c'est l'utilisateur du jeton d'accès.
+    // Sans jeton (possible seulement avec chat.security.require-token=false), l'ID indiqué par le client est accepté.
+    private static boolean isCaller(int userId) {
+        Integer callerId = AccessTokenFilter.currentUserId();
+        return callerId == null || callerId == userId;
+    }
+
+    // Vérifie que l'utilisateur du jeton d'accès est le créateur d'un canal (même règle sans jeton).
+    private boolean isCallerCreatorOf(int channelId) {
+        Integer callerId = AccessTokenFilter.currentUserId();
+        return callerId == null || servicesRequest.isCreatorOfChannel(callerId, channelId);
+    }
+
+    // Vérifie que l'utilisateur du jeton d'accès est membre d'un canal (index des membres en mémoire).
+    private boolean isCallerMemberOf(int channelId) {
+        Integer callerId = AccessTokenFilter.currentUserId();
+        return callerId == null || membershipIndex.isMember(channelId, callerId);
+    }
+
+    private static <T> ResponseEntity<T> forbidden() {
+        return ResponseEntity.status(403).build();
+    }
+
+    // Réponse en cas d'échec du calcul d'un hash : 503 si le pool de PasswordHasher est saturé.
+    private static ResponseEntity<?> passwordHasherBusy(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof RejectedExecutionException) {
+            return ResponseEntity
+                    .status(503)
+                    .body(new ErrorResponse("Serveur occupé, veuillez réessayer."));
+        }
+        return ResponseEntity
+                .status(500)
+                .body(new ErrorResponse("Erreur lors de la vérification du mot de passe."));
+    }
 }
@@ -0,0 +1,79 @@
+package fr.utc.sr03.controller;
+
+import fr.utc.sr03.model.User;
+import fr.utc.sr03.services.CacheStatistics;
+import fr.utc.sr03.services.ErrorResponse;
+import fr.utc.sr03.services.MessageHistoryWriter;
+import fr.utc.sr03.services.PasswordHasher;
+import fr.utc.sr03.services.ServicesRequest;
+import fr.utc.sr03.websocket.DynamicWebSocketHandler;
+import jakarta.annotation.Resource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+// La classe StatsController expose aux administrateurs connectés des statistiques de fonctionnement en JSON.
+@RestController
+public class StatsController {
+
+    @Resource
+    private ServicesRequest servicesRequest;
+
+    @Resource
+    private DynamicWebSocketHandler dynamicWebSocketHandler;
+
+    @Resource
+    private MessageHistoryWriter messageHistoryWriter;
+
+    @Resource
+    private PasswordHasher passwordHasher;
+
+    @Resource
+    private CacheStatistics cacheStatistics;
+
+    // État des files d'envoi WebSocket : profondeur et nombre de messages perdus par session.
+    @GetMapping("/home/stats/websocket")
+    public ResponseEntity<?> getWebSocketStats(Authentication authentication) {
+        if (!isAdmin(authentication)) {
+            return ResponseEntity.status(403).body(new ErrorResponse("Accès réservé aux administrateurs."));
+        }
+        return ResponseEntity.ok(dynamicWebSocketHandler.getOutboundStats());
+    }
+
+    // État de l'historisation des messages : messages en attente, écrits, perdus ou en échec.
+    @GetMapping("/home/stats/history")
+    public ResponseEntity<?> getHistoryStats(Authentication authentication) {
+        if (!isAdmin(authentication)) {
+            return ResponseEntity.status(403).body(new ErrorResponse("Accès réservé aux administrateurs."));
+        }
+        return ResponseEntity.ok(messageHistoryWriter.getStats());
+    }
+
+    // État du pool de hash des mots de passe : occupation, attente moyenne, demandes refusées et hashs mis à niveau.
+    @GetMapping("/home/stats/passwords")
+    public ResponseEntity<?> getPasswordStats(Authentication authentication) {
+        if (!isAdmin(authentication)) {
+            return ResponseEntity.status(403).body(new ErrorResponse("Accès réservé aux administrateurs."));
+        }
+        return ResponseEntity.ok(passwordHasher.getStats());
+    }
+
+    // Cache de second niveau d'Hibernate : succès et échecs, au total et par région.
+    @GetMapping("/home/stats/cache")
+    public ResponseEntity<?> getCacheStats(Authentication authentication) {
+        if (!isAdmin(authentication)) {
+            return ResponseEntity.status(403).body(new ErrorResponse("Accès réservé aux administrateurs."));
+        }
+        return ResponseEntity.ok(cacheStatistics.getStats());
+    }
+
+    // Méthodes privées :
+
+    // Vérifie que l'utilisateur connecté est administrateur.
+    private boolean isAdmin(Authentication authentication) {
+        if (authentication == null) return false;
+        User user = servicesRequest.findByEmail(authentication.getName());
+        return user.isAdmin();
+    }
+}
@@ -1,10 +1,11 @@
 package fr.utc.sr03.controller;
 
 import fr.utc.sr03.model.User;
+import fr.utc.sr03.services.AvatarStore;
+import fr.utc.sr03.services.PasswordHasher;
 import fr.utc.sr03.services.ServicesRequest;
 import fr.utc.sr03.services.UserDTO;
 import jakarta.annotation.Resource;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -12,8 +13,8 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 @Controller
 public class WebController {
@@ -21,6 +22,12 @@ public class WebController {
     @Resource
     private ServicesRequest servicesRequest;
 
+    @Resource
+    private AvatarStore avatarStore;
+
+    @Resource
+    private PasswordHasher passwordHasher;
+
     // Afficher le formulaire de connexion.
     @GetMapping("/login")
     public String loginForm() {
@@ -40,27 +47,31 @@ public class WebController {
             return "redirect:/home";
         }
 
+        // On évite de calculer un hash pour un email déjà utilisé.
+        if (servicesRequest.emailExists(userDTO.getMail())) {
+            redirectAttrs.addFlashAttribute("error", "Email déjà utilisé.");
+            return "redirect:/home";
+        }
+
         User user = new User();
         user.setFirstName(userDTO.getFirstName());
         user.setLastName(userDTO.getLastName());
         user.setMail(userDTO.getMail());
-        user.setPassword(userDTO.getPassword());
         user.setAdmin(userDTO.isAdmin());
 
-        // Utilise l'image de l'utilisateur si fournie, sinon image par défaut.
-        if (userDTO.getAvatarBase64() != null && !userDTO.getAvatarBase64().isEmpty()) {
-            user.setAvatar(userDTO.getAvatarBase64());
-        } else {
-            ClassPathResource imgFile = new ClassPathResource("static/img/avatar_base.jpg");
-            if (!imgFile.exists()) {
-                redirectAttrs.addFlashAttribute("error", "Fichier avatar par défaut introuvable !");
-                return "redirect:/home";
-            }
-            try (InputStream inputStream = imgFile.getInputStream()) {
-                byte[] imageBytes = inputStream.readAllBytes();
-                user.setAvatar(Base64.getEncoder().encodeToString(imageBytes));
-            }
+        // Hash du mot de passe sur le pool dédié (nombre de calculs simultanés borné).
+        String passwordHash = hashPassword(userDTO.getPassword(), redirectAttrs);
+        if (passwordHash == null) {
+            return "redirect:/home";
         }
+        user.setPassword(passwordHash);
+
+        // Utilise l'image de l'utilisateur si fournie, sinon l'image par défaut (partagée).
+        String avatarHash = resolveAvatar(userDTO.getAvatarBase64(), redirectAttrs);
+        if (avatarHash == null) {
+            return "redirect:/home";
+        }
+        user.setAvatarHash(avatarHash);
 
         // Si l'utilisateur ne peut pas être ajouté, c'est que l'email est déjà utilisé.
         if (!servicesRequest.addUser(user)) {
@@ -87,14 +98,14 @@ public class WebController {
             @RequestParam String firstName,
             @RequestParam String lastName,
             @RequestParam String email,
-            @RequestParam String password,
+            @RequestParam(defaultValue = "") String password,
             @RequestParam(defaultValue = "false") boolean admin,
             @RequestParam String avatarBase64,
             RedirectAttributes redirectAttributes
     ) throws IOException {
 
-        // Vérification de la validité du nouveau mot de passe.
-        if (!servicesRequest.isPasswordValid(password)) {
+        // Vérification de la validité du nouveau mot de passe (champ vide : mot de passe inchangé).
+        if (!password.isEmpty() && !servicesRequest.isPasswordValid(password)) {
             redirectAttributes.addFlashAttribute("error", "Le mot de passe ne respecte pas toutes les règles.");
             return "redirect:/home";
         }
@@ -113,35 +124,41 @@ public class WebController {
         user.setFirstName(firstName);
         user.setLastName(lastName);
         user.setMail(email);
-        user.setPassword(password);
         user.setAdmin(admin);
 
-        // Modification du champ 'avatar', avec une image par défaut si le champ est vide.
-        if (avatarBase64 != null && !avatarBase64.isEmpty()) {
-            user.setAvatar(avatarBase64);
-        } else {
-            ClassPathResource imgFile = new ClassPathResource("static/img/avatar_base.jpg");
-            if (!imgFile.exists()) {
-                redirectAttributes.addFlashAttribute("error", "Fichier avatar par défaut introuvable !");
+        // Le mot de passe n'est hashé que s'il a été modifié ; sinon le hash enregistré est conservé.
+        if (!password.isEmpty()) {
+            String passwordHash = hashPassword(password, redirectAttributes);
+            if (passwordHash == null) {
                 return "redirect:/home";
             }
-            try (InputStream inputStream = imgFile.getInputStream()) {
-                byte[] imageBytes = inputStream.readAllBytes();
-                user.setAvatar(Base64.getEncoder().encodeToString(imageBytes));
-            }
+            user.setPassword(passwordHash);
         }
 
+        // Modification de l'avatar, avec l'image par défaut si le champ est vide.
+        String avatarHash = resolveAvatar(avatarBase64, redirectAttributes);
+        if (avatarHash == null) {
+            return "redirect:/home";
+        }
+        user.setAvatarHash(avatarHash);
+
         // Mise à jour de l'utilisateur dans la base de données.
         servicesRequest.updateUser(user);
         return "redirect:/home";
     }
 
     // Page d’accueil admin après la connexion.
+    // Le tableau des utilisateurs est paginé, trié et filtré côté serveur : seule la page affichée est chargée.
     @GetMapping("/home")
     public String homePage(
             Model model,
             Authentication authentication,
-            RedirectAttributes redirectAttributes
+            RedirectAttributes redirectAttributes,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "25") int size,
+            @RequestParam(defaultValue = "lastName") String sort,
+            @RequestParam(defaultValue = "asc") String dir,
+            @RequestParam(defaultValue = "") String q
     ) {
         // On récupère l'utilisateur qui tente de se connecter.
         String email = authentication.getName();
@@ -153,17 +170,86 @@ public class WebController {
             return "redirect:/login";
         }
 
-        // On récupère les utilisateurs pour pouvoir les afficher sur la page.
-        model.addAttribute("users", servicesRequest.getUsers());
+        // Bornes de la pagination.
+        int pageSize = Math.max(5, Math.min(size, 100));
+        long totalUsers = servicesRequest.countUsers(q);
+        int totalPages = (int) Math.max(1, (totalUsers + pageSize - 1) / pageSize);
+        int currentPage = Math.max(0, Math.min(page, totalPages - 1));
+        boolean ascending = !"desc".equalsIgnoreCase(dir);
+
+        // On récupère la page d'utilisateurs à afficher.
+        model.addAttribute("users", servicesRequest.getUsersPage(q, sort, ascending, currentPage, pageSize));
+        model.addAttribute("page", currentPage);
+        model.addAttribute("size", pageSize);
+        model.addAttribute("totalPages", totalPages);
+        model.addAttribute("totalUsers", totalUsers);
+        model.addAttribute("sort", sort);
+        model.addAttribute("dir", ascending ? "asc" : "desc");
+        model.addAttribute("q", q);
 
         return "home";
     }
 
     // Supprime un utilisateur et redirige vers la page d’accueil.
     @GetMapping("/home/delete/{id}")
-    public String deleteUser(@PathVariable int id, Model model) {
+    public String deleteUser(@PathVariable int id) {
         servicesRequest.deleteUserById(id);
-        model.addAttribute("users", servicesRequest.getUsers());
         return "redirect:/home#usertable"; // rechargement de la section table
     }
+
+    // Supprime en une seule transaction les utilisateurs cochés dans le tableau (requêtes groupées).
+    @PostMapping("/home/users/delete")
+    public String deleteUsers(
+            @RequestParam(name = "ids", required = false) List<Integer> ids,
+            Authentication authentication,
+            RedirectAttributes redirectAttrs
+    ) {
+        // Seul un administrateur peut supprimer des utilisateurs.
+        User admin = servicesRequest.findByEmail(authentication.getName());
+        if (!admin.isAdmin()) {
+            redirectAttrs.addAttribute("accessDenied", true);
+            return "redirect:/login";
+        }
+
+        if (ids == null || ids.isEmpty()) {
+            redirectAttrs.addFlashAttribute("error", "Aucun utilisateur sélectionné.");
+            return "redirect:/home#usertable";
+        }
+
+        servicesRequest.deleteUsersByIds(ids);
+        redirectAttrs.addFlashAttribute("message", ids.size() + " utilisateur(s) supprimé(s).");
+        return "redirect:/home#usertable";
+    }
+
+    // Méthodes privées :
+
+    // Calcule le hash d'un mot de passe sur le pool de PasswordHasher.
+    // Retourne 'null' en ajoutant un message d'erreur si le pool est saturé.
+    private String hashPassword(String password, RedirectAttributes redirectAttrs) {
+        try {
+            return passwordHasher.encode(password);
+        } catch (RejectedExecutionException e) {
+            redirectAttrs.addFlashAttribute("error", "Serveur occupé, veuillez réessayer.");
+            return null;
+        }
+    }
+
+    // Enregistre l'avatar envoyé par le formulaire (ou l'avatar par défaut s'il est vide) et retourne son empreinte.
+    // Retourne 'null' en ajoutant un message d'erreur si l'image est invalide ou si l'avatar par défaut est introuvable.
+    private String resolveAvatar(String avatarBase64, RedirectAttributes redirectAttrs) throws IOException {
+        if (avatarBase64 != null && !avatarBase64.isEmpty()) {
+            try {
+                return avatarStore.storeBase64(avatarBase64);
+            } catch (IllegalArgumentException e) {
+                redirectAttrs.addFlashAttribute("error", "Avatar invalide.");
+                return null;
+            }
+        }
+
+        String defaultHash = avatarStore.getDefaultAvatarHash();
+        if (defaultHash == null) {
+            redirectAttrs.addFlashAttribute("error", "Fichier avatar par défaut introuvable !");
+        }
+        return defaultHash;
+    }
 }
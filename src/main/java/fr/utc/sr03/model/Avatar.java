@@ -0,0 +1,92 @@
+package fr.utc.sr03.model;
+
+import jakarta.persistence.*;
+
+// Cette classe représente une image d'avatar et fait le lien avec la table Avatars de la BDD.
+// Les avatars sont adressés par leur contenu : la clé est l'empreinte SHA-256 de l'image, si bien qu'une même image
+// (l'avatar par défaut notamment) n'est stockée qu'une seule fois, quel que soit le nombre d'utilisateurs qui l'utilisent.
+@Entity
+@Table(name = "Avatars")
+public class Avatar {
+
+    @Id
+    @Column(name = "hash", length = 64)
+    private String hash;
+
+    @Column(name = "contentType")
+    private String contentType;
+
+    @Column(name = "data")
+    private byte[] data;
+
+    // Miniatures carrées générées à l'enregistrement, pour les listes de membres et résultats de recherche.
+    @Column(name = "thumb32")
+    private byte[] thumb32;
+
+    @Column(name = "thumb64")
+    private byte[] thumb64;
+
+    @Column(name = "thumb128")
+    private byte[] thumb128;
+
+    @Column(name = "thumbContentType")
+    private String thumbContentType;
+
+    // Getters & Setters :
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+
+    public byte[] getThumb32() {
+        return thumb32;
+    }
+
+    public void setThumb32(byte[] thumb32) {
+        this.thumb32 = thumb32;
+    }
+
+    public byte[] getThumb64() {
+        return thumb64;
+    }
+
+    public void setThumb64(byte[] thumb64) {
+        this.thumb64 = thumb64;
+    }
+
+    public byte[] getThumb128() {
+        return thumb128;
+    }
+
+    public void setThumb128(byte[] thumb128) {
+        this.thumb128 = thumb128;
+    }
+
+    public String getThumbContentType() {
+        return thumbContentType;
+    }
+
+    public void setThumbContentType(String thumbContentType) {
+        this.thumbContentType = thumbContentType;
+    }
+}
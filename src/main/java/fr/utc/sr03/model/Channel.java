@@ -1,6 +1,8 @@
 package fr.utc.sr03.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.security.InvalidParameterException;
 import java.text.ParseException;
 import java.time.LocalDateTime;
@@ -10,7 +12,10 @@ import java.util.Calendar;
 import java.util.Date;
 
 // Cette classe représente un salon de discussion et fait le lien avec la table Channels de la BDD.
+// Les entités sont gardées dans le cache de second niveau d'Hibernate (voir CacheConfig).
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "channels")
 @Table(name = "Channels")
 public class Channel {
 
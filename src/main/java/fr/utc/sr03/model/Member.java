@@ -1,6 +1,8 @@
 package fr.utc.sr03.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.text.ParseException;
 import java.time.LocalDateTime;
@@ -10,12 +12,18 @@ import java.util.Calendar;
 import java.util.Date;
 
 // Cette classe représente l'appartenance d'un utilisateur à un salon et fait le lien avec la table Members de la BDD.
+// Les entités sont gardées dans le cache de second niveau d'Hibernate (voir CacheConfig).
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "members")
 @Table(name = "Members")
 public class Member {
 
+    // Identifiant tiré d'une séquence (par blocs de 50) pour permettre l'insertion des membres par lots JDBC.
+    // La séquence est créée et placée après les identifiants existants par la migration V1_1__members_sequence.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "members_seq")
+    @SequenceGenerator(name = "members_seq", sequenceName = "members_seq", allocationSize = 50)
     @Column(name = "membershipID")
     private Integer membershipID;
 
@@ -0,0 +1,75 @@
+package fr.utc.sr03.model;
+
+import jakarta.persistence.*;
+
+import java.util.Calendar;
+
+// Cette classe représente un message envoyé dans un salon et fait le lien avec la table Messages de la BDD.
+// L'index (channelID, timestamp, messageID) sert à la pagination de l'historique par curseur.
+@Entity
+@Table(name = "Messages", indexes = {
+        @Index(name = "idx_messages_channel_timestamp", columnList = "channelID, timestamp, messageID")
+})
+public class Message {
+
+    // Identifiant tiré d'une séquence (par blocs de 50) pour permettre l'insertion des messages par lots JDBC.
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "messages_seq")
+    @SequenceGenerator(name = "messages_seq", sequenceName = "messages_seq", allocationSize = 50)
+    @Column(name = "messageID")
+    private Long messageID;
+
+    @Column(name = "channelID")
+    private Integer channelID;
+
+    @Column(name = "userID")
+    private Integer userID;
+
+    @Column(name = "content", columnDefinition = "TEXT")
+    private String content;
+
+    @Column(name = "timestamp")
+    private Calendar timestamp;
+
+    // Getters & Setters :
+
+    public Long getMessageID() {
+        return messageID;
+    }
+
+    public void setMessageID(Long messageID) {
+        this.messageID = messageID;
+    }
+
+    public int getChannelID() {
+        return channelID;
+    }
+
+    public void setChannelID(Integer channelID) {
+        this.channelID = channelID;
+    }
+
+    public int getUserID() {
+        return userID;
+    }
+
+    public void setUserID(Integer userID) {
+        this.userID = userID;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public Calendar getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(Calendar timestamp) {
+        this.timestamp = timestamp;
+    }
+}
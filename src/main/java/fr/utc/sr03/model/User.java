@@ -1,9 +1,14 @@
 package fr.utc.sr03.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 // Cette classe représente un utilisateur de l'application et fait le lien avec la table Users de la BDD.
+// Les entités sont gardées dans le cache de second niveau d'Hibernate (voir CacheConfig).
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users")
 @Table(name="Users")
 public class User {
 
@@ -27,8 +32,9 @@ public class User {
     @Column(name="admin")
     private boolean admin;
 
-    @Column(name="avatar")
-    private String avatar;
+    // Empreinte SHA-256 de l'avatar, dont l'image est stockée dans la table Avatars.
+    @Column(name="avatar", length = 64)
+    private String avatarHash;
 
     // Getters & Setters :
 
@@ -72,8 +78,8 @@ public class User {
 
     public void setAdmin(boolean admin) { this.admin = admin; }
 
-    public String getAvatar() { return avatar; }
+    public String getAvatarHash() { return avatarHash; }
 
-    public void setAvatar(String avatar) { this.avatar = avatar; }
+    public void setAvatarHash(String avatarHash) { this.avatarHash = avatarHash; }
 
 }
@@ -0,0 +1,62 @@
+package fr.utc.sr03.services;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+
+// Filtre Spring Security qui authentifie les requêtes de l'API portant un en-tête "Authorization: Bearer <jeton>".
+// Le jeton est vérifié en mémoire par AccessTokenService : aucune requête en BDD ni session HTTP n'est nécessaire.
+// Le principal de l'authentification est l'ID de l'utilisateur (Integer).
+public class AccessTokenFilter extends OncePerRequestFilter {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final AccessTokenService accessTokenService;
+
+    public AccessTokenFilter(AccessTokenService accessTokenService) {
+        this.accessTokenService = accessTokenService;
+    }
+
+    // ID de l'utilisateur authentifié par le jeton d'accès de la requête en cours, ou 'null' sans jeton valide.
+    public static Integer currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.getPrincipal() instanceof Integer userId ? userId : null;
+    }
+
+    // Les jetons ne concernent que l'API REST ; l'interface administrateur reste sur le formulaire de connexion.
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getServletPath().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String header = request.getHeader("Authorization");
+
+        if (header != null && header.startsWith(BEARER_PREFIX)) {
+            AccessTokenService.TokenClaims claims = accessTokenService.verify(header.substring(BEARER_PREFIX.length()));
+
+            // Un jeton invalide ou expiré est simplement ignoré : la requête est traitée comme anonyme.
+            if (claims != null) {
+                List<SimpleGrantedAuthority> authorities = claims.admin()
+                        ? List.of(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN"))
+                        : List.of(new SimpleGrantedAuthority("ROLE_USER"));
+
+                SecurityContextHolder.getContext().setAuthentication(
+                        new UsernamePasswordAuthenticationToken(claims.userId(), null, authorities));
+            }
+        }
+
+        chain.doFilter(request, response);
+    }
+}
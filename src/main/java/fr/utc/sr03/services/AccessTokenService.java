@@ -0,0 +1,104 @@
+package fr.utc.sr03.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+// Émission et vérification de jetons d'accès signés (HMAC-SHA256), sans état côté serveur.
+// Un jeton a la forme "<données>.<signature>" (base64url), où les données sont "<userId>:<admin>:<expiration>".
+// La vérification se fait entièrement en mémoire : ni BDD, ni session HTTP, donc utilisable sur toutes les instances
+// qui partagent le même secret.
+@Service
+public class AccessTokenService {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+
+    // Durée de validité d'un jeton, en secondes.
+    private final long ttlSeconds;
+
+    // Un objet Mac n'est pas thread-safe : on en garde un par thread.
+    private final ThreadLocal<Mac> macs;
+
+    // Informations portées par un jeton valide.
+    public record TokenClaims(int userId, boolean admin) {}
+
+    // Le secret (en base64) doit être identique sur toutes les instances. S'il n'est pas configuré,
+    // un secret aléatoire est généré : les jetons ne sont alors valables que jusqu'au redémarrage de cette instance.
+    public AccessTokenService(
+            @Value("${chat.token.secret:}") String secret,
+            @Value("${chat.token.ttl-minutes:720}") long ttlMinutes
+    ) {
+        byte[] keyBytes;
+        if (secret.isEmpty()) {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+            System.err.println("chat.token.secret non défini : secret aléatoire utilisé pour signer les jetons.");
+        } else {
+            keyBytes = Base64.getDecoder().decode(secret);
+        }
+
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.ttlSeconds = ttlMinutes * 60;
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    // Émet un jeton pour un utilisateur authentifié.
+    public String issue(int userId, boolean admin) {
+        long expiresAt = System.currentTimeMillis() / 1000 + ttlSeconds;
+        byte[] payload = (userId + ":" + (admin ? 1 : 0) + ":" + expiresAt).getBytes(StandardCharsets.US_ASCII);
+        return ENCODER.encodeToString(payload) + "." + ENCODER.encodeToString(sign(payload));
+    }
+
+    // Vérifie un jeton et retourne les informations qu'il porte, ou 'null' s'il est invalide ou expiré.
+    public TokenClaims verify(String token) {
+        if (token == null) return null;
+
+        int dot = token.indexOf('.');
+        if (dot <= 0) return null;
+
+        try {
+            byte[] payload = DECODER.decode(token.substring(0, dot));
+            byte[] signature = DECODER.decode(token.substring(dot + 1));
+
+            // Comparaison en temps constant, pour ne rien révéler de la signature attendue.
+            if (!MessageDigest.isEqual(sign(payload), signature)) return null;
+
+            String[] parts = new String(payload, StandardCharsets.US_ASCII).split(":");
+            if (parts.length != 3) return null;
+
+            long expiresAt = Long.parseLong(parts[2]);
+            if (expiresAt < System.currentTimeMillis() / 1000) return null;
+
+            return new TokenClaims(Integer.parseInt(parts[0]), "1".equals(parts[1]));
+        } catch (IllegalArgumentException e) {
+            // Base64 ou nombre invalide.
+            return null;
+        }
+    }
+
+    // Méthodes privées :
+
+    private byte[] sign(byte[] payload) {
+        return macs.get().doFinal(payload);
+    }
+}
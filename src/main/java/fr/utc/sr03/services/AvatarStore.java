@@ -0,0 +1,290 @@
+package fr.utc.sr03.services;
+
+import fr.utc.sr03.model.Avatar;
+import fr.utc.sr03.model.User;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Stockage des avatars adressé par contenu : chaque image est enregistrée une seule fois dans la table Avatars,
+// sous son empreinte SHA-256, et les utilisateurs ne conservent que cette empreinte.
+// Les images sont validées et décodées une seule fois, à l'enregistrement, pour générer leurs miniatures ;
+// les miniatures servies sont gardées dans un cache LRU borné.
+@Component
+public class AvatarStore {
+
+    // Chemin de l'avatar attribué aux utilisateurs qui n'en fournissent pas.
+    private static final String DEFAULT_AVATAR = "static/img/avatar_base.jpg";
+
+    // Nombre d'utilisateurs convertis par transaction lors de la migration des anciens avatars.
+    private static final int MIGRATION_BATCH_SIZE = 50;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private final TransactionTemplate transactionTemplate;
+
+    // Empreinte de l'avatar par défaut, calculée au premier besoin.
+    private volatile String defaultAvatarHash;
+
+    // Taille maximale (en octets) d'une image envoyée.
+    @Value("${chat.avatar.max-bytes:2097152}")
+    private int maxBytes;
+
+    // Largeur ou hauteur maximale (en pixels) d'une image envoyée.
+    @Value("${chat.avatar.max-dimension:4096}")
+    private int maxDimension;
+
+    // Nombre maximal de miniatures gardées en mémoire.
+    @Value("${chat.avatar.thumbnail-cache-size:2048}")
+    private int thumbnailCacheSize;
+
+    // Cache LRU des miniatures, indexé par "empreinte:taille".
+    private Map<String, AvatarImage> thumbnailCache;
+
+    // Image servie au client : son type MIME et son contenu.
+    public record AvatarImage(String contentType, byte[] data) {}
+
+    public AvatarStore(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Crée le cache des miniatures une fois sa taille connue.
+    @PostConstruct
+    public void init() {
+        int capacity = thumbnailCacheSize;
+        thumbnailCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AvatarImage> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+
+    // Enregistre une image (si elle n'existe pas déjà) et retourne son empreinte.
+    // Lève une IllegalArgumentException si le contenu n'est pas une image valide ou dépasse les limites.
+    public String store(byte[] data) {
+        if (data.length > maxBytes) {
+            throw new IllegalArgumentException("Image trop volumineuse.");
+        }
+
+        String hash = sha256(data);
+        if (exists(hash)) return hash;
+
+        // Décodage unique de l'image, hors transaction : validation, type MIME et miniatures.
+        Avatar avatar = new Avatar();
+        avatar.setHash(hash);
+        avatar.setData(data);
+        AvatarThumbnailer.generate(avatar, maxDimension);
+
+        return save(avatar);
+    }
+
+    // Enregistre une image encodée en base64 et retourne son empreinte.
+    // Lève une IllegalArgumentException si la chaîne n'est pas du base64 valide.
+    public String storeBase64(String base64) {
+        // On refuse les images trop lourdes avant même de les décoder.
+        if ((long) base64.length() * 3 / 4 > maxBytes) {
+            throw new IllegalArgumentException("Image trop volumineuse.");
+        }
+        return store(Base64.getDecoder().decode(base64));
+    }
+
+    // Retourne l'empreinte de l'avatar par défaut (enregistré une seule fois pour tous les utilisateurs),
+    // ou 'null' si le fichier est introuvable.
+    public String getDefaultAvatarHash() throws IOException {
+        if (defaultAvatarHash == null) {
+            ClassPathResource imgFile = new ClassPathResource(DEFAULT_AVATAR);
+            if (!imgFile.exists()) return null;
+
+            try (InputStream inputStream = imgFile.getInputStream()) {
+                defaultAvatarHash = store(inputStream.readAllBytes());
+            }
+        }
+        return defaultAvatarHash;
+    }
+
+    // Récupère un avatar par son empreinte ('null' s'il n'existe pas).
+    public Avatar find(String hash) {
+        return em.find(Avatar.class, hash);
+    }
+
+    // Récupère la miniature d'un avatar ('null' si l'avatar n'existe pas).
+    // 'size' est arrondi à la taille de miniature disponible la plus proche.
+    public AvatarImage getThumbnail(String hash, int size) {
+        int thumbSize = AvatarThumbnailer.closestSize(size);
+        String key = hash + ":" + thumbSize;
+
+        AvatarImage cached = thumbnailCache.get(key);
+        if (cached != null) return cached;
+
+        // On ne lit que la miniature demandée, pas l'image d'origine.
+        List<Object[]> rows = em.createQuery(
+                        "SELECT a.thumb" + thumbSize + ", a.thumbContentType FROM Avatar a WHERE a.hash = :hash",
+                        Object[].class)
+                .setParameter("hash", hash)
+                .getResultList();
+        if (rows.isEmpty()) return null;
+
+        byte[] data = (byte[]) rows.get(0)[0];
+        String contentType = (String) rows.get(0)[1];
+
+        // Avatar enregistré avant la génération des miniatures : on les génère une fois pour toutes.
+        if (data == null) {
+            Avatar avatar = generateMissingThumbnails(hash);
+            if (avatar == null) return null;
+            contentType = avatar.getThumbContentType();
+            data = switch (thumbSize) {
+                case 32 -> avatar.getThumb32();
+                case 64 -> avatar.getThumb64();
+                default -> avatar.getThumb128();
+            };
+        }
+
+        AvatarImage thumbnail = new AvatarImage(contentType, data);
+        thumbnailCache.put(key, thumbnail);
+        return thumbnail;
+    }
+
+    // Convertit au démarrage les utilisateurs dont la colonne avatar contient encore l'image en base64
+    // (format d'avant le stockage par empreinte) : l'image est déplacée dans Avatars et remplacée par son empreinte.
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateLegacyAvatars() {
+        int converted;
+        do {
+            converted = transactionTemplate.execute(status -> {
+                List<User> users = em.createQuery(
+                                "SELECT u FROM User u WHERE LENGTH(u.avatarHash) <> 64 ORDER BY u.usersID", User.class)
+                        .setMaxResults(MIGRATION_BATCH_SIZE)
+                        .getResultList();
+
+                for (User user : users) {
+                    try {
+                        user.setAvatarHash(storeLegacy(user.getAvatarHash()));
+                    } catch (IllegalArgumentException e) {
+                        // Image illisible : l'utilisateur reçoit l'avatar par défaut.
+                        user.setAvatarHash(defaultAvatarHashOrNull());
+                    }
+                }
+                return users.size();
+            });
+        } while (converted == MIGRATION_BATCH_SIZE);
+    }
+
+    // Méthodes privées :
+
+    // Calcule l'empreinte SHA-256 (en hexadécimal) d'un contenu.
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Vérifie si une image est déjà enregistrée, sans charger son contenu.
+    private boolean exists(String hash) {
+        Long count = em.createQuery("SELECT COUNT(a) FROM Avatar a WHERE a.hash = :hash", Long.class)
+                .setParameter("hash", hash)
+                .getSingleResult();
+        return count > 0;
+    }
+
+    // Génère et enregistre les miniatures d'un avatar qui n'en a pas encore.
+    private Avatar generateMissingThumbnails(String hash) {
+        return transactionTemplate.execute(status -> {
+            Avatar avatar = em.find(Avatar.class, hash);
+            if (avatar == null) return null;
+
+            if (avatar.getThumb32() == null) {
+                try {
+                    AvatarThumbnailer.generate(avatar, maxDimension);
+                } catch (IllegalArgumentException e) {
+                    // Image illisible, ou trop grande pour être décodée sans risque : on renvoie l'image telle quelle.
+                    useOriginalAsThumbnails(avatar);
+                }
+            }
+            return avatar;
+        });
+    }
+
+    // Enregistre un ancien avatar (base64). Ces images ont été acceptées avant l'arrivée des limites d'envoi :
+    // une image valide mais trop lourde ou trop grande est conservée, et servie telle quelle comme miniature.
+    // Lève une IllegalArgumentException si le contenu n'est pas du base64 ou pas une image reconnue.
+    private String storeLegacy(String base64) {
+        byte[] data = Base64.getDecoder().decode(base64);
+        String hash = sha256(data);
+        if (exists(hash)) return hash;
+
+        Avatar avatar = new Avatar();
+        avatar.setHash(hash);
+        avatar.setData(data);
+        if (data.length > maxBytes) {
+            useOriginalAsThumbnails(avatar);
+        } else {
+            try {
+                AvatarThumbnailer.generate(avatar, maxDimension);
+            } catch (IllegalArgumentException e) {
+                useOriginalAsThumbnails(avatar);
+            }
+        }
+        if (avatar.getContentType() == null) {
+            throw new IllegalArgumentException("Format d'image non reconnu.");
+        }
+
+        return save(avatar);
+    }
+
+    // Persiste un nouvel avatar et retourne son empreinte.
+    private String save(Avatar avatar) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!exists(avatar.getHash())) {
+                    em.persist(avatar);
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            // La même image vient d'être enregistrée par une autre requête : son empreinte est déjà valide.
+        }
+        return avatar.getHash();
+    }
+
+    // Sert l'image d'origine pour toutes les tailles de miniature, sans la décoder.
+    private static void useOriginalAsThumbnails(Avatar avatar) {
+        if (avatar.getContentType() == null) {
+            avatar.setContentType(AvatarThumbnailer.detectContentType(avatar.getData()));
+        }
+        avatar.setThumbContentType(avatar.getContentType());
+        avatar.setThumb32(avatar.getData());
+        avatar.setThumb64(avatar.getData());
+        avatar.setThumb128(avatar.getData());
+    }
+
+    // Empreinte de l'avatar par défaut, ou 'null' s'il est introuvable.
+    private String defaultAvatarHashOrNull() {
+        try {
+            return getDefaultAvatarHash();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package fr.utc.sr03.services;
+
+import fr.utc.sr03.model.Avatar;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+// Décode une image d'avatar (ImageIO, sans affichage) et génère ses miniatures carrées de 32, 64 et 128 pixels.
+// Les dimensions sont lues dans l'en-tête avant le décodage, pour refuser une image géante avant de l'allouer.
+public final class AvatarThumbnailer {
+
+    // Tailles de miniatures disponibles (en pixels).
+    public static final int[] SIZES = {32, 64, 128};
+
+    // Qualité de compression des miniatures JPEG.
+    private static final float JPEG_QUALITY = 0.85f;
+
+    private AvatarThumbnailer() {}
+
+    // Vérifie l'image de l'avatar, renseigne son type MIME et génère ses miniatures.
+    // Lève une IllegalArgumentException si le contenu n'est pas une image lisible ou dépasse 'maxDimension' pixels de côté.
+    public static void generate(Avatar avatar, int maxDimension) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(avatar.getData()))) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IllegalArgumentException("Format d'image non reconnu.");
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if (width > maxDimension || height > maxDimension) {
+                    throw new IllegalArgumentException("Image trop grande (" + width + "x" + height + ").");
+                }
+
+                BufferedImage image = reader.read(0);
+                boolean alpha = image.getColorModel().hasAlpha();
+
+                avatar.setContentType(reader.getOriginatingProvider().getMIMETypes()[0]);
+                avatar.setThumbContentType(alpha ? "image/png" : "image/jpeg");
+                avatar.setThumb32(encode(square(image, 32, alpha), alpha));
+                avatar.setThumb64(encode(square(image, 64, alpha), alpha));
+                avatar.setThumb128(encode(square(image, 128, alpha), alpha));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Image illisible.", e);
+        }
+    }
+
+    // Retourne le type MIME d'une image d'après son en-tête, sans la décoder ('null' si le format n'est pas reconnu).
+    public static String detectContentType(byte[] data) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) return null;
+            return readers.next().getOriginatingProvider().getMIMETypes()[0];
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Retourne la plus petite taille de miniature au moins égale à la taille demandée (la plus grande sinon).
+    public static int closestSize(int requested) {
+        for (int size : SIZES) {
+            if (size >= requested) return size;
+        }
+        return SIZES[SIZES.length - 1];
+    }
+
+    // Méthodes privées :
+
+    // Recadre l'image au centre en un carré puis la réduit à la taille voulue.
+    // La réduction se fait par moitiés successives, ce qui garde une bonne qualité avec une interpolation bilinéaire.
+    private static BufferedImage square(BufferedImage source, int size, boolean alpha) {
+        int side = Math.min(source.getWidth(), source.getHeight());
+        BufferedImage current = source.getSubimage(
+                (source.getWidth() - side) / 2, (source.getHeight() - side) / 2, side, side);
+
+        int currentSize = side;
+        do {
+            currentSize = Math.max(size, currentSize / 2);
+            current = resize(current, currentSize, alpha);
+        } while (currentSize > size);
+
+        return current;
+    }
+
+    private static BufferedImage resize(BufferedImage source, int size, boolean alpha) {
+        BufferedImage target = new BufferedImage(size, size,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, size, size, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    // Encode une miniature en PNG (si transparence) ou en JPEG compressé.
+    private static byte[] encode(BufferedImage image, boolean alpha) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        if (alpha) {
+            ImageIO.write(image, "png", out);
+            return out.toByteArray();
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
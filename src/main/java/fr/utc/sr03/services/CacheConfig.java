@@ -0,0 +1,93 @@
+package fr.utc.sr03.services;
+
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.time.Duration;
+
+// Configuration du cache de second niveau d'Hibernate (JCache, implémenté par Ehcache, en mémoire).
+// Les utilisateurs, canaux et membres y sont gardés, chaque région étant bornée en nombre d'entrées et en durée de vie.
+// Le cache est propre à chaque instance : les modifications faites par les autres instances en sont retirées
+// à réception de leurs événements (ClusterSync).
+// Seules les entités sont en cache (pas de cache de requêtes) : les recherches par mail utilisées pour
+// l'authentification lisent toujours la BDD.
+// Les écritures passent par Hibernate : persist/merge/remove mettent à jour le cache, et les requêtes
+// UPDATE/DELETE groupées invalident les régions des entités qui portent sur leurs tables.
+@Configuration
+public class CacheConfig {
+
+    // Noms des régions (repris dans les annotations @Cache des entités).
+    public static final String USERS_REGION = "users";
+    public static final String CHANNELS_REGION = "channels";
+    public static final String MEMBERS_REGION = "members";
+
+    // Durée de vie (en secondes) d'une entrée du cache.
+    @Value("${chat.cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    // Nombre maximal d'utilisateurs gardés en cache.
+    @Value("${chat.cache.users.max-entries:10000}")
+    private long maxUsers;
+
+    // Nombre maximal de canaux gardés en cache.
+    @Value("${chat.cache.channels.max-entries:10000}")
+    private long maxChannels;
+
+    // Nombre maximal d'adhésions gardées en cache.
+    @Value("${chat.cache.members.max-entries:50000}")
+    private long maxMembers;
+
+    // Gestionnaire JCache dédié à Hibernate, avec une cache Ehcache bornée par région.
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager() {
+        EhcacheCachingProvider provider =
+                (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(provider.getDefaultURI(), getClass().getClassLoader());
+
+        createCache(cacheManager, USERS_REGION, maxUsers);
+        createCache(cacheManager, CHANNELS_REGION, maxChannels);
+        createCache(cacheManager, MEMBERS_REGION, maxMembers);
+
+        return cacheManager;
+    }
+
+    // Active le cache de second niveau (sans cache de requêtes) et les statistiques d'Hibernate.
+    // Une région absente du gestionnaire ci-dessus fait échouer le démarrage (pas de cache créé sans limite).
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheProperties(CacheManager hibernateCacheManager) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.USE_QUERY_CACHE, false);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+            properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+        };
+    }
+
+    // Méthodes privées :
+
+    private void createCache(CacheManager cacheManager, String name, long maxEntries) {
+        // Le gestionnaire par défaut est partagé dans la JVM : on recrée la cache si elle existe déjà.
+        if (cacheManager.getCache(name) != null) {
+            cacheManager.destroyCache(name);
+        }
+
+        CacheConfigurationBuilder<Object, Object> builder = CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(Object.class, Object.class, ResourcePoolsBuilder.heap(maxEntries))
+                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofSeconds(ttlSeconds)));
+
+        cacheManager.createCache(name, Eh107Configuration.fromEhcacheCacheConfiguration(builder));
+    }
+}
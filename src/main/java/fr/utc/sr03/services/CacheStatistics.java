@@ -0,0 +1,58 @@
+package fr.utc.sr03.services;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceUnit;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Lecture des statistiques du cache de second niveau d'Hibernate (succès, échecs, écritures par région).
+@Component
+public class CacheStatistics {
+
+    // Régions suivies, dans l'ordre d'affichage.
+    private static final List<String> REGIONS = List.of(
+            CacheConfig.USERS_REGION,
+            CacheConfig.CHANNELS_REGION,
+            CacheConfig.MEMBERS_REGION);
+
+    @PersistenceUnit
+    private EntityManagerFactory emf;
+
+    // Statistiques globales, puis détail par région.
+    public Map<String, Object> getStats() {
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", statistics.getSecondLevelCacheHitCount());
+        stats.put("misses", statistics.getSecondLevelCacheMissCount());
+        stats.put("puts", statistics.getSecondLevelCachePutCount());
+
+        Map<String, Object> regions = new LinkedHashMap<>();
+        for (String region : REGIONS) {
+            CacheRegionStatistics regionStats = statistics.getCacheRegionStatistics(region);
+            if (regionStats == null) continue;
+
+            Map<String, Object> detail = new LinkedHashMap<>();
+            detail.put("hits", regionStats.getHitCount());
+            detail.put("misses", regionStats.getMissCount());
+            detail.put("puts", regionStats.getPutCount());
+            detail.put("hitRatio", hitRatio(regionStats.getHitCount(), regionStats.getMissCount()));
+            regions.put(region, detail);
+        }
+        stats.put("regions", regions);
+        return stats;
+    }
+
+    // Méthodes privées :
+
+    private static double hitRatio(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
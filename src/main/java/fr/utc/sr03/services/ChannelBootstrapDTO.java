@@ -0,0 +1,35 @@
+package fr.utc.sr03.services;
+
+import java.util.List;
+
+// Cette classe représente un salon dans l'écran d'accueil de l'utilisateur : le salon, le rôle de l'utilisateur
+// (créateur ou invité), le nombre de membres et un aperçu des premiers membres (créateur en tête).
+public class ChannelBootstrapDTO {
+    private ChannelSummaryDTO channel;
+    private boolean creator;
+    private long memberCount;
+    private List<UserSummaryDTO> members;
+
+    public ChannelBootstrapDTO(ChannelSummaryDTO channel, boolean creator, long memberCount, List<UserSummaryDTO> members) {
+        this.channel = channel;
+        this.creator = creator;
+        this.memberCount = memberCount;
+        this.members = members;
+    }
+
+    public ChannelSummaryDTO getChannel() {
+        return channel;
+    }
+
+    public boolean isCreator() {
+        return creator;
+    }
+
+    public long getMemberCount() {
+        return memberCount;
+    }
+
+    public List<UserSummaryDTO> getMembers() {
+        return members;
+    }
+}
@@ -0,0 +1,115 @@
+package fr.utc.sr03.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Supprime les canaux arrivés à leur date de fin de validité, en tâche de fond.
+// Les échéances sont gardées en mémoire dans une file de priorité (la plus proche en tête), chargée au démarrage
+// puis alimentée à chaque création de canal. À chaque tick, les canaux expirés sont supprimés par lots, par
+// ServicesRequest.deleteChannelsByIds (requêtes groupées, mise à jour des index, fermeture des sessions WebSocket
+// via un ChannelsDeletedEvent), comme une suppression faite par un administrateur.
+@Component
+public class ChannelExpiryScheduler {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    // Injection différée : ServicesRequest dépend lui-même de ce planificateur (enregistrement des échéances).
+    @Lazy
+    @Resource
+    private ServicesRequest servicesRequest;
+
+    // Intervalle (ms) entre deux vérifications des échéances.
+    @Value("${chat.expiry.tick-ms:1000}")
+    private long tickMs;
+
+    // Nombre maximal de canaux supprimés par transaction.
+    @Value("${chat.expiry.batch-size:500}")
+    private int batchSize;
+
+    // Échéances à venir, triées par date de fin de validité.
+    private final PriorityQueue<Deadline> deadlines =
+            new PriorityQueue<>(Comparator.comparingLong(Deadline::endOfValidity));
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "channel-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Charge les échéances de tous les canaux existants et démarre les vérifications périodiques.
+    @PostConstruct
+    public void start() {
+        List<Object[]> rows = em.createQuery(
+                        "SELECT c.channelId, c.endOfValidity FROM Channel c", Object[].class)
+                .getResultList();
+
+        for (Object[] row : rows) {
+            schedule((Integer) row[0], (Calendar) row[1]);
+        }
+
+        executor.scheduleWithFixedDelay(this::purgeExpired, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    // Enregistre l'échéance d'un canal.
+    public void schedule(int channelId, Calendar endOfValidity) {
+        if (endOfValidity == null) return;
+
+        synchronized (deadlines) {
+            deadlines.add(new Deadline(channelId, endOfValidity.getTimeInMillis()));
+        }
+    }
+
+    // Méthodes privées :
+
+    // Supprime tous les canaux dont l'échéance est passée.
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        List<Integer> expired = new ArrayList<>();
+
+        synchronized (deadlines) {
+            while (!deadlines.isEmpty() && deadlines.peek().endOfValidity() <= now) {
+                expired.add(deadlines.poll().channelId());
+            }
+        }
+
+        for (int from = 0; from < expired.size(); from += batchSize) {
+            List<Integer> batch = expired.subList(from, Math.min(from + batchSize, expired.size()));
+            try {
+                // Chaque lot est supprimé dans sa propre transaction.
+                servicesRequest.deleteChannelsByIds(batch);
+            } catch (RuntimeException e) {
+                System.err.println("Échec de la suppression de " + batch.size() + " canaux expirés : " + e.getMessage());
+                // On réessaiera au prochain tick.
+                synchronized (deadlines) {
+                    for (Integer channelId : batch) {
+                        deadlines.add(new Deadline(channelId, now));
+                    }
+                }
+            }
+        }
+    }
+
+    // Échéance d'un canal (date de fin de validité en ms).
+    private record Deadline(int channelId, long endOfValidity) {}
+}
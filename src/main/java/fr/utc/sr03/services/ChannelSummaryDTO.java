@@ -0,0 +1,42 @@
+package fr.utc.sr03.services;
+
+import java.util.Calendar;
+
+// Cette classe représente un salon de discussion renvoyé par l'API, lu directement par projection JPQL
+// (mêmes champs JSON que l'entité Channel, sans entité chargée dans le contexte de persistance).
+public class ChannelSummaryDTO {
+    private int channelId;
+    private String title;
+    private String description;
+    private Calendar date;
+    private Calendar endOfValidity;
+
+    // Constructeur utilisé directement par les requêtes JPQL (projection "SELECT new ...").
+    public ChannelSummaryDTO(Integer channelId, String title, String description, Calendar date, Calendar endOfValidity) {
+        this.channelId = channelId;
+        this.title = title;
+        this.description = description;
+        this.date = date;
+        this.endOfValidity = endOfValidity;
+    }
+
+    public int getChannelId() {
+        return channelId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public Calendar getDate() {
+        return date;
+    }
+
+    public Calendar getEndOfValidity() {
+        return endOfValidity;
+    }
+}
@@ -0,0 +1,17 @@
+package fr.utc.sr03.services;
+
+import java.util.List;
+
+// Événement publié (après commit) lorsque des canaux ont été supprimés, par un utilisateur ou parce qu'ils ont expiré.
+// Il permet notamment de fermer les sessions WebSocket encore ouvertes sur ces canaux.
+public class ChannelsDeletedEvent {
+    private final List<Integer> channelIds;
+
+    public ChannelsDeletedEvent(List<Integer> channelIds) {
+        this.channelIds = channelIds;
+    }
+
+    public List<Integer> getChannelIds() {
+        return channelIds;
+    }
+}
@@ -1,10 +1,12 @@
 package fr.utc.sr03.services;
 
 import fr.utc.sr03.model.User;
+import jakarta.annotation.Resource;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -13,18 +15,26 @@ import java.util.List;
 
 // Service utilisé par Spring Security pour charger un utilisateur depuis la base de données
 // en se basant sur son email lors de l'authentification.
+// Il enregistre aussi le nouveau hash lorsque Spring Security recalcule un mot de passe d'un ancien coût BCrypt.
 @Service
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
 
     // Permet de faire des requêtes JPA avec Hibernate.
     @PersistenceContext
     private EntityManager em;
 
+    @Resource
+    private ServicesRequest servicesRequest;
+
+    @Resource
+    private PasswordHasher passwordHasher;
+
     // Méthode appelée automatiquement par Spring Security lors d'une tentative de connexion.
     // Elle récupère un utilisateur par son email et construit un objet UserDetails.
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
-        // Requête pour récupérer l'utilisateur par son mail.
+        // Requête pour récupérer l'utilisateur par son mail. Elle lit toujours la BDD (aucune requête en cache) :
+        // un mot de passe changé ou un compte supprimé sur une autre instance doit être pris en compte aussitôt.
         TypedQuery<User> query = em.createQuery(
                 "SELECT u FROM User u WHERE u.mail = :mail", User.class);
         query.setParameter("mail", email);
@@ -46,4 +56,16 @@ public class CustomUserDetailsService implements UserDetailsService {
                 .roles("USER")
                 .build();
     }
+
+    // Appelée par Spring Security après une connexion réussie avec un hash d'un ancien coût :
+    // le hash recalculé remplace l'ancien (sauf si le mot de passe a changé entre-temps).
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        if (servicesRequest.updatePasswordHash(user.getUsername(), user.getPassword(), newPassword)) {
+            passwordHasher.recordUpgrade();
+        }
+        return org.springframework.security.core.userdetails.User.withUserDetails(user)
+                .password(newPassword)
+                .build();
+    }
 }
@@ -0,0 +1,153 @@
+package fr.utc.sr03.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Index en mémoire des appartenances (canal -> utilisateurs), chargé depuis la table Members au démarrage.
+// Il permet de vérifier qu'un utilisateur est membre d'un canal sans interroger la BDD lors de la diffusion des messages.
+// ServicesRequest le met à jour après chaque commit modifiant les membres ; les modifications faites par les autres
+// instances sont rechargées depuis la BDD (reloadChannel, reloadUser, reloadAll), à réception de leurs événements.
+@Component
+public class MembershipIndex {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    // Utilisateurs membres de chaque canal.
+    private final Map<Integer, Set<Integer>> usersByChannel = new ConcurrentHashMap<>();
+
+    // Canaux de chaque utilisateur (index inverse, utilisé lors de la suppression d'un utilisateur).
+    private final Map<Integer, Set<Integer>> channelsByUser = new ConcurrentHashMap<>();
+
+    // Charge toutes les appartenances existantes depuis la BDD.
+    @PostConstruct
+    public void warmUp() {
+        List<Object[]> rows = em.createQuery(
+                        "SELECT m.channelID, m.userID FROM Member m", Object[].class)
+                .getResultList();
+
+        for (Object[] row : rows) {
+            add((Integer) row[0], (Integer) row[1]);
+        }
+    }
+
+    // Vérifie si un utilisateur est membre d'un canal.
+    public boolean isMember(int channelId, int userId) {
+        Set<Integer> users = usersByChannel.get(channelId);
+        return users != null && users.contains(userId);
+    }
+
+    // Enregistre l'appartenance d'un utilisateur à un canal.
+    public void add(int channelId, int userId) {
+        addTo(usersByChannel, channelId, userId);
+        addTo(channelsByUser, userId, channelId);
+    }
+
+    // Retire un utilisateur d'un canal.
+    public void remove(int channelId, int userId) {
+        usersByChannel.computeIfPresent(channelId, (id, users) -> {
+            users.remove(userId);
+            return users.isEmpty() ? null : users;
+        });
+        channelsByUser.computeIfPresent(userId, (id, channels) -> {
+            channels.remove(channelId);
+            return channels.isEmpty() ? null : channels;
+        });
+    }
+
+    // Retire tous les membres d'un canal supprimé.
+    public void removeChannel(int channelId) {
+        Set<Integer> users = usersByChannel.remove(channelId);
+        if (users == null) return;
+
+        for (Integer userId : users) {
+            channelsByUser.computeIfPresent(userId, (id, channels) -> {
+                channels.remove(channelId);
+                return channels.isEmpty() ? null : channels;
+            });
+        }
+    }
+
+    // Retire un utilisateur supprimé de tous ses canaux.
+    public void removeUser(int userId) {
+        Set<Integer> channels = channelsByUser.remove(userId);
+        if (channels == null) return;
+
+        for (Integer channelId : channels) {
+            usersByChannel.computeIfPresent(channelId, (id, users) -> {
+                users.remove(userId);
+                return users.isEmpty() ? null : users;
+            });
+        }
+    }
+
+    // Recharge depuis la BDD les membres d'un canal.
+    public void reloadChannel(int channelId) {
+        List<Integer> userIds = em.createQuery(
+                        "SELECT m.userID FROM Member m WHERE m.channelID = :channelId", Integer.class)
+                .setParameter("channelId", channelId)
+                .getResultList();
+        replaceChannel(channelId, new HashSet<>(userIds));
+    }
+
+    // Recharge depuis la BDD les canaux d'un utilisateur (aucun s'il a été supprimé).
+    public void reloadUser(int userId) {
+        Set<Integer> channelIds = new HashSet<>(em.createQuery(
+                        "SELECT m.channelID FROM Member m WHERE m.userID = :userId", Integer.class)
+                .setParameter("userId", userId)
+                .getResultList());
+
+        for (Integer channelId : channelIds) {
+            add(channelId, userId);
+        }
+        for (Integer channelId : Set.copyOf(channelsByUser.getOrDefault(userId, Set.of()))) {
+            if (!channelIds.contains(channelId)) remove(channelId, userId);
+        }
+    }
+
+    // Recharge toutes les appartenances (après une interruption de la synchronisation entre instances).
+    public void reloadAll() {
+        Map<Integer, Set<Integer>> loaded = new HashMap<>();
+        for (Object[] row : em.createQuery("SELECT m.channelID, m.userID FROM Member m", Object[].class)
+                .getResultList()) {
+            loaded.computeIfAbsent((Integer) row[0], id -> new HashSet<>()).add((Integer) row[1]);
+        }
+
+        for (Integer channelId : Set.copyOf(usersByChannel.keySet())) {
+            if (!loaded.containsKey(channelId)) removeChannel(channelId);
+        }
+        loaded.forEach(this::replaceChannel);
+    }
+
+    // Méthodes privées :
+
+    // Ajoute une valeur à l'ensemble d'une clé, dans compute : un retrait simultané qui vide l'ensemble
+    // (et le retire de la table) ne peut pas s'intercaler entre la lecture de l'ensemble et l'ajout.
+    private static void addTo(Map<Integer, Set<Integer>> index, int key, int value) {
+        index.compute(key, (id, values) -> {
+            if (values == null) values = ConcurrentHashMap.newKeySet();
+            values.add(value);
+            return values;
+        });
+    }
+
+    // Remplace les membres d'un canal. Les nouveaux membres sont ajoutés avant le retrait des anciens :
+    // un membre présent avant et après n'est jamais vu absent.
+    private void replaceChannel(int channelId, Set<Integer> userIds) {
+        for (Integer userId : userIds) {
+            add(channelId, userId);
+        }
+        for (Integer userId : Set.copyOf(usersByChannel.getOrDefault(channelId, Set.of()))) {
+            if (!userIds.contains(userId)) remove(channelId, userId);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package fr.utc.sr03.services;
+
+import java.util.List;
+
+// Événement publié (après commit) lorsque les membres de canaux ont changé (ajout, retrait, changement de créateur).
+// Il permet notamment aux autres instances de l'application de recharger ces canaux dans leur index des membres.
+public class MembershipsChangedEvent {
+    private final List<Integer> channelIds;
+
+    public MembershipsChangedEvent(List<Integer> channelIds) {
+        this.channelIds = channelIds;
+    }
+
+    public List<Integer> getChannelIds() {
+        return channelIds;
+    }
+}
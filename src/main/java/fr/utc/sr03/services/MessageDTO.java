@@ -0,0 +1,51 @@
+package fr.utc.sr03.services;
+
+import java.util.Calendar;
+
+// Cette classe permet d'envoyer au front un message de l'historique d'un salon, sans données sur son auteur autres que son ID.
+public class MessageDTO {
+    private long messageID;
+    private int userID;
+    private String content;
+    private Calendar timestamp;
+
+    // Constructeur utilisé directement par la requête JPQL (projection "SELECT new ...").
+    public MessageDTO(Long messageID, Integer userID, String content, Calendar timestamp) {
+        this.messageID = messageID;
+        this.userID = userID;
+        this.content = content;
+        this.timestamp = timestamp;
+    }
+
+    public long getMessageID() {
+        return messageID;
+    }
+
+    public void setMessageID(long messageID) {
+        this.messageID = messageID;
+    }
+
+    public int getUserID() {
+        return userID;
+    }
+
+    public void setUserID(int userID) {
+        this.userID = userID;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public Calendar getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(Calendar timestamp) {
+        this.timestamp = timestamp;
+    }
+}
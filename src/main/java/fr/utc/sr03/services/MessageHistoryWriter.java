@@ -0,0 +1,223 @@
+package fr.utc.sr03.services;
+
+import fr.utc.sr03.model.Message;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Enregistre l'historique des messages en "write-behind" : les messages sont déposés dans une file en mémoire
+// et un thread dédié les insère par lots (taille ou délai atteint), en une transaction et un batch JDBC par lot.
+// La diffusion des messages n'attend donc jamais la BDD. À l'arrêt de l'application, la file est vidée.
+// Un lot en échec est retenté si l'erreur est passagère, sinon découpé en lots plus petits jusqu'au message seul :
+// un message refusé par la BDD n'empêche pas l'enregistrement des autres messages de son lot.
+@Component
+public class MessageHistoryWriter {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private final TransactionTemplate transactionTemplate;
+
+    // Nombre maximal de messages insérés par lot.
+    @Value("${chat.history.batch-size:200}")
+    private int batchSize;
+
+    // Délai maximal (ms) avant l'écriture d'un lot incomplet.
+    @Value("${chat.history.flush-interval-ms:100}")
+    private long flushIntervalMs;
+
+    // Nombre maximal de messages en attente d'écriture.
+    @Value("${chat.history.queue-capacity:50000}")
+    private int queueCapacity;
+
+    // Nombre de nouvelles tentatives après une erreur passagère, et délai avant la première (doublé ensuite).
+    @Value("${chat.history.retries:3}")
+    private int retries;
+
+    @Value("${chat.history.retry-delay-ms:200}")
+    private long retryDelayMs;
+
+    private BlockingQueue<Message> queue;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    // Compteurs pour la supervision.
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+
+    public MessageHistoryWriter(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Démarre le thread d'écriture.
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        writerThread = new Thread(this::run, "message-history-writer");
+        writerThread.start();
+    }
+
+    // Arrête le thread d'écriture après avoir écrit les messages encore en attente.
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writerThread.join();
+    }
+
+    // Dépose un message à enregistrer, sans bloquer l'appelant.
+    // Si la file est pleine (BDD indisponible ou trop lente), le message n'est pas historisé.
+    public boolean enqueue(int channelId, int userId, String content) {
+        Message message = new Message();
+        message.setChannelID(channelId);
+        message.setUserID(userId);
+        message.setContent(content);
+        message.setTimestamp(Calendar.getInstance());
+
+        if (!running || !queue.offer(message)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    // Retourne les compteurs de l'historisation pour la supervision.
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", queue.size());
+        stats.put("written", written.get());
+        stats.put("dropped", dropped.get());
+        stats.put("failed", failed.get());
+        stats.put("retried", retried.get());
+        return stats;
+    }
+
+    // Méthodes privées :
+
+    // Boucle du thread d'écriture : constitue des lots puis les insère.
+    // Elle se termine une fois l'arrêt demandé et la file vide.
+    private void run() {
+        List<Message> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                Message first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                // On complète le lot jusqu'à sa taille maximale ou jusqu'à l'expiration du délai.
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) break;
+
+                    Message next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // On continue jusqu'à ce que la file soit vidée.
+                running = false;
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    // Enregistre un lot. Une erreur passagère (connexion perdue, interblocage) est retentée quelques fois ;
+    // un lot refusé pour une autre raison (données invalides) est enregistré par moitiés.
+    private void flush(List<Message> batch) {
+        RuntimeException error = null;
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            if (attempt > 0) {
+                retried.incrementAndGet();
+                if (!pause(retryDelayMs << (attempt - 1))) break;
+            }
+            try {
+                insert(batch);
+                written.addAndGet(batch.size());
+                return;
+            } catch (RuntimeException e) {
+                error = e;
+                if (!isTransientFailure(e)) break;
+            }
+        }
+
+        if (isTransientFailure(error) || batch.size() == 1) {
+            reportFailure(batch, error);
+            return;
+        }
+        int middle = batch.size() / 2;
+        flush(batch.subList(0, middle));
+        flush(batch.subList(middle, batch.size()));
+    }
+
+    // Insère des messages dans une seule transaction, avec le batching JDBC d'Hibernate.
+    private void insert(List<Message> batch) {
+        // Une tentative annulée a pu attribuer des identifiants : ils sont tirés à nouveau.
+        for (Message message : batch) {
+            message.setMessageID(null);
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            em.unwrap(Session.class).setJdbcBatchSize(batchSize);
+            for (Message message : batch) {
+                em.persist(message);
+            }
+            em.flush();
+            em.clear();
+        });
+    }
+
+    private void reportFailure(List<Message> batch, RuntimeException e) {
+        failed.addAndGet(batch.size());
+        System.err.println("Échec de l'enregistrement de " + batch.size() + " messages : " + e.getMessage());
+    }
+
+    // Vrai si l'erreur peut disparaître d'elle-même : connexion à la BDD (SQLSTATE 08, délai d'obtention
+    // d'une connexion) ou conflit entre transactions (SQLSTATE 40 : interblocage, sérialisation).
+    private static boolean isTransientFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTransientException) return true;
+            if (cause instanceof SQLException sql && sql.getSQLState() != null
+                    && (sql.getSQLState().startsWith("08") || sql.getSQLState().startsWith("40"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Attend avant une nouvelle tentative. Retourne faux si le thread a été interrompu.
+    private static boolean pause(long delayMs) {
+        try {
+            Thread.sleep(delayMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
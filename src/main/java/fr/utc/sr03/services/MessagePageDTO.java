@@ -0,0 +1,31 @@
+package fr.utc.sr03.services;
+
+import java.util.List;
+
+// Cette classe permet d'envoyer au front une page de l'historique d'un salon (du plus récent au plus ancien),
+// avec le curseur à fournir pour obtenir la page suivante ('null' s'il n'y a plus de messages).
+public class MessagePageDTO {
+    private List<MessageDTO> messages;
+    private String nextCursor;
+
+    public MessagePageDTO(List<MessageDTO> messages, String nextCursor) {
+        this.messages = messages;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<MessageDTO> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<MessageDTO> messages) {
+        this.messages = messages;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,20 @@
+package fr.utc.sr03.services;
+
+import org.springframework.boot.autoconfigure.flyway.FlywayConfigurationCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Configuration des migrations du schéma (Flyway, scripts dans src/main/resources/db/migration).
+// Elles sont appliquées au démarrage, avant l'initialisation de JPA.
+@Configuration
+public class MigrationConfig {
+
+    // Une base déjà en service (créée avant les migrations) est marquée à la version 0 :
+    // toutes les migrations lui sont ensuite appliquées, et elles ne recréent pas les tables existantes.
+    @Bean
+    public FlywayConfigurationCustomizer baselineExistingSchema() {
+        return configuration -> configuration
+                .baselineOnMigrate(true)
+                .baselineVersion("0");
+    }
+}
@@ -0,0 +1,167 @@
+package fr.utc.sr03.services;
+
+import at.favre.lib.crypto.bcrypt.BCrypt;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Calcul et vérification des hashs BCrypt sur un pool de threads dédié, de taille et de file bornées.
+// Un hash coûte plusieurs centaines de millisecondes de CPU : en limitant le nombre de calculs simultanés,
+// une rafale d'inscriptions ou de connexions ne peut plus occuper tous les threads du serveur web.
+// Si la file est pleine, la demande est refusée (RejectedExecutionException) au lieu d'attendre indéfiniment.
+// Le coût BCrypt est configurable : les hashs d'un autre coût sont recalculés à la connexion suivante.
+// Ce composant sert aussi d'encodeur de mots de passe à Spring Security (connexion à l'interface administrateur).
+@Component
+public class PasswordHasher implements PasswordEncoder {
+
+    // Coût BCrypt des nouveaux hashs (2^cost itérations).
+    @Value("${chat.password.bcrypt-cost:12}")
+    private int cost;
+
+    // Nombre maximal de hashs calculés en parallèle (0 : la moitié des processeurs).
+    @Value("${chat.password.threads:0}")
+    private int threads;
+
+    // Nombre maximal de demandes en attente d'un thread.
+    @Value("${chat.password.queue-capacity:100}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    // Compteurs pour la supervision.
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong totalRunNanos = new AtomicLong();
+    private final AtomicLong upgraded = new AtomicLong();
+
+    // Crée le pool une fois la configuration connue.
+    @PostConstruct
+    public void start() {
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "password-hasher-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+    }
+
+    // Calcule le hash d'un mot de passe avec le coût configuré.
+    public CompletableFuture<String> hash(String password) {
+        return submit(() -> BCrypt.withDefaults().hashToString(cost, password.toCharArray()));
+    }
+
+    // Vérifie un mot de passe contre un hash enregistré.
+    public CompletableFuture<Boolean> verify(String password, String hash) {
+        return submit(() -> BCrypt.verifyer().verify(password.toCharArray(), hash).verified);
+    }
+
+    // Indique si un hash a été calculé avec un autre coût que celui configuré et doit être recalculé.
+    public boolean needsUpgrade(String hash) {
+        return costOf(hash) != cost;
+    }
+
+    // Compte les hashs recalculés avec le coût configuré.
+    public void recordUpgrade() {
+        upgraded.incrementAndGet();
+    }
+
+    // Statistiques du pool : configuration, occupation, attente moyenne et demandes refusées.
+    public Map<String, Object> getStats() {
+        long completed = executor.getCompletedTaskCount();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cost", cost);
+        stats.put("threads", executor.getMaximumPoolSize());
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("completed", completed);
+        stats.put("rejected", rejected.get());
+        stats.put("upgraded", upgraded.get());
+        stats.put("avgWaitMs", completed == 0 ? 0 : totalWaitNanos.get() / completed / 1_000_000.0);
+        stats.put("avgHashMs", completed == 0 ? 0 : totalRunNanos.get() / completed / 1_000_000.0);
+        return stats;
+    }
+
+    // PasswordEncoder (Spring Security) : mêmes calculs, en attendant le résultat du pool.
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return await(hash(rawPassword.toString()));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (encodedPassword == null || encodedPassword.isEmpty()) return false;
+        return await(verify(rawPassword.toString(), encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return encodedPassword != null && needsUpgrade(encodedPassword);
+    }
+
+    // Méthodes privées :
+
+    // Exécute un calcul sur le pool en mesurant son attente et sa durée.
+    // Une demande refusée (file pleine) donne un résultat en échec avec une RejectedExecutionException.
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        long submittedAt = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long startedAt = System.nanoTime();
+                totalWaitNanos.addAndGet(startedAt - submittedAt);
+                try {
+                    return task.get();
+                } finally {
+                    totalRunNanos.addAndGet(System.nanoTime() - startedAt);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // Attend le résultat d'un calcul, en relançant son exception d'origine.
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+
+    // Lit le coût d'un hash BCrypt ("$2a$12$..."), ou -1 s'il n'est pas au format attendu.
+    private static int costOf(String hash) {
+        if (hash.length() < 7 || hash.charAt(0) != '$' || hash.charAt(3) != '$') return -1;
+        try {
+            return Integer.parseInt(hash.substring(4, 6));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
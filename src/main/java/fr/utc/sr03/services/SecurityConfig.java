@@ -1,14 +1,16 @@
 package fr.utc.sr03.services;
 
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authorization.AuthorizationDecision;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
@@ -20,8 +22,18 @@ public class SecurityConfig {
 
     private final CustomUserDetailsService userDetailsService;
 
-    public SecurityConfig(CustomUserDetailsService userDetailsService) {
+    private final AccessTokenService accessTokenService;
+
+    // Si vrai (par défaut), l'API (hors connexion, inscription et avatars) exige un jeton d'accès valide,
+    // et l'utilisateur qui agit est toujours celui du jeton.
+    // Le mettre à faux n'est qu'une mesure de transition pour d'anciens clients sans jeton : leurs requêtes
+    // sont alors acceptées avec l'ID d'utilisateur qu'elles indiquent, sans aucune vérification.
+    @Value("${chat.security.require-token:true}")
+    private boolean requireToken;
+
+    public SecurityConfig(CustomUserDetailsService userDetailsService, AccessTokenService accessTokenService) {
         this.userDetailsService = userDetailsService;
+        this.accessTokenService = accessTokenService;
     }
 
     // Configuration de la chaîne de sécurité HTTP pour Spring Security.
@@ -31,10 +43,15 @@ public class SecurityConfig {
                 // Désactivation du CSRF pour simplifier les appels API.
                 .csrf(AbstractHttpConfigurer::disable)
 
+                // Authentification sans état des appels API par jeton signé (vérifié en mémoire).
+                .addFilterBefore(new AccessTokenFilter(accessTokenService), UsernamePasswordAuthenticationFilter.class)
+
                 // Configuration des règles d’accès.
                 .authorizeHttpRequests(auth -> auth
-                        .requestMatchers("/api/**").permitAll() // API publique.
-                        .requestMatchers("/message/**").permitAll() // Envoi de messages par un chemin public.
+                        .requestMatchers("/api/users/login", "/api/users/self-signup", "/api/avatars/**").permitAll()
+                        .requestMatchers("/api/**").access((authentication, context) ->
+                                new AuthorizationDecision(!requireToken || isTokenAuthenticated(authentication.get())))
+                        .requestMatchers("/message/**", "/messages").permitAll() // Le jeton est vérifié lors du handshake WebSocket.
                         .requestMatchers("/login", "/css/**").permitAll() // Login et CSS publics.
                         .anyRequest().authenticated() // Tout le reste nécessite une connexion (/home notamment)
                 )
@@ -67,7 +84,7 @@ public class SecurityConfig {
                         )
                 )
 
-                // Injection du service utilisateur personnalisé.
+                // Injection du service utilisateur personnalisé (l'encodeur de mots de passe est le bean PasswordHasher).
                 .userDetailsService(userDetailsService)
 
                 // Activation du CORS pour autoriser les requêtes front (React).
@@ -76,6 +93,11 @@ public class SecurityConfig {
         return http.build();
     }
 
+    // Vérifie qu'une requête a été authentifiée par un jeton d'accès (principal = ID de l'utilisateur).
+    private static boolean isTokenAuthenticated(Authentication authentication) {
+        return authentication != null && authentication.isAuthenticated() && authentication.getPrincipal() instanceof Integer;
+    }
+
     // Configuration des règles CORS (accès front depuis localhost:3000).
     @Bean
     public CorsConfigurationSource corsConfigurationSource() {
@@ -89,10 +111,4 @@ public class SecurityConfig {
         source.registerCorsConfiguration("/**", configuration); // S’applique à toutes les routes.
         return source;
     }
-
-    // Bean pour l'encodage des mots de passe avec BCrypt.
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
-    }
 }
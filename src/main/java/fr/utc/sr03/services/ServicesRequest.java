@@ -1,17 +1,26 @@
 package fr.utc.sr03.services;
 
-import at.favre.lib.crypto.bcrypt.BCrypt;
 import fr.utc.sr03.model.Channel;
 import fr.utc.sr03.model.Member;
 import fr.utc.sr03.model.User;
 import jakarta.persistence.*;
+import jakarta.annotation.Resource;
 import jakarta.transaction.Transactional;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
 
 // Cette classe permet d'effectuer des opérations dans la BDD.
 @Repository
@@ -21,55 +30,57 @@ public class ServicesRequest {
     @PersistenceContext
     private EntityManager em;
 
-    // ------------------- AUTHENTIFICATION & UTILISATEURS -------------------
-
-    // Vérifie un utilisateur via son mail et son mot de passe (hash comparé via BCrypt).
-    // Retourne 'null' si les identifiants fournis ne correspondent à aucun utilisateur.
-    public UserDTO verifyUser(String mail, String password) {
-        try {
-            TypedQuery<User> query = em.createQuery(
-                    "SELECT u FROM User u WHERE u.mail = :mail", User.class);
-            query.setParameter("mail", mail);
-
-            User usr = query.getSingleResult();
+    // Index en mémoire des membres des canaux, mis à jour après chaque commit.
+    @Resource
+    private MembershipIndex membershipIndex;
+
+    // Index de recherche des utilisateurs, mis à jour après chaque commit.
+    @Resource
+    private UserSearchIndex userSearchIndex;
+
+    // Planificateur de la suppression des canaux expirés.
+    @Resource
+    private ChannelExpiryScheduler channelExpiryScheduler;
+
+    // Publication des événements applicatifs (suppression de canaux, etc.).
+    @Resource
+    private ApplicationEventPublisher eventPublisher;
+
+    // Projections JPQL des vues en lecture seule (seules les colonnes utiles au client sont lues).
+    private static final String USER_SUMMARY =
+            "new fr.utc.sr03.services.UserSummaryDTO(u.usersID, u.firstName, u.lastName, u.mail, u.admin, u.avatarHash)";
+    private static final String CHANNEL_SUMMARY =
+            "new fr.utc.sr03.services.ChannelSummaryDTO(c.channelId, c.title, c.description, c.date, c.endOfValidity)";
+
+    // Premiers membres (créateur en tête) de chacun des canaux ':ids', au plus ':previewSize' par canal.
+    // Requête SQL : les noms de colonnes sont ceux des migrations Flyway, produits par la stratégie de nommage
+    // par défaut ("userID" -> userid, "firstName" -> first_name). Exécutée telle quelle par SchemaMigrationTest.
+    static final String MEMBER_PREVIEW_SQL =
+            "SELECT p.channelid, p.userid, p.first_name, p.last_name, p.mail, p.admin, p.avatar FROM (" +
+                    "SELECT m.channelid, u.userid, u.first_name, u.last_name, u.mail, u.admin, u.avatar, " +
+                    "ROW_NUMBER() OVER (PARTITION BY m.channelid ORDER BY m.creator DESC, m.membershipid) AS rn " +
+                    "FROM members m JOIN users u ON u.userid = m.userid WHERE m.channelid IN (:ids)" +
+                    ") p WHERE p.rn <= :previewSize ORDER BY p.channelid, p.rn";
+
+    // Nombre d'insertions envoyées par lot JDBC lors de l'ajout groupé de membres.
+    @Value("${chat.members.batch-size:500}")
+    private int memberBatchSize;
 
-            boolean validPassword = BCrypt.verifyer()
-                    .verify(password.toCharArray(), usr.getPassword())
-                    .verified;
-
-            // Si le mot de passe fourni correspond au vrai mot de passe, on crée un UserDTO pour le retourner au front.
-            if (validPassword) {
-                return new UserDTO(
-                        usr.getUsersID(), usr.getFirstName(), usr.getLastName(),
-                        usr.getMail(), "", usr.isAdmin(), usr.getAvatar());
-            }
-            return null;
-
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-    // Recherche les utilisateurs dont le nom, prénom ou mail contient le texte fourni.
-    public List<UserDTO> searchUsers(String query) {
-        String searchPattern = "%" + query.toLowerCase() + "%";
+    // ------------------- AUTHENTIFICATION & UTILISATEURS -------------------
 
-        List<User> users = em.createQuery(
-                        "SELECT u FROM User u WHERE LOWER(u.mail) LIKE :search " +
-                                "OR LOWER(u.firstName) LIKE :search " +
-                                "OR LOWER(u.lastName) LIKE :search", User.class)
-                .setParameter("search", searchPattern)
+    // Récupère un utilisateur par son email, ou 'null' s'il n'existe pas.
+    // Utilisé à la connexion : le mot de passe est ensuite vérifié par PasswordHasher, hors transaction.
+    // Comme findByEmail, la requête ne passe pas par le cache : le hash lu doit être celui enregistré en BDD.
+    public User findByEmailOrNull(String email) {
+        List<User> users = em.createQuery("SELECT u FROM User u WHERE u.mail = :mail", User.class)
+                .setParameter("mail", email)
                 .getResultList();
-
-        // Crée et renvoie une liste de UserDTO dont le nom ou le mail contient le texte fourni.
-        return users.stream()
-                .map(u -> new UserDTO(
-                        u.getUsersID(), u.getFirstName(), u.getLastName(),
-                        u.getMail(), "", u.isAdmin(), u.getAvatar()))
-                .collect(Collectors.toList());
+        return users.isEmpty() ? null : users.get(0);
     }
 
-    // Trouve un utilisateur par son email.
+    // Trouve un utilisateur par son email (index unique ux_users_mail).
+    // La requête n'est pas mise en cache : le cache de chaque instance ignore les écritures faites par les autres,
+    // et cette recherche sert à l'authentification et aux droits d'administration.
     public User findByEmail(String email) {
         TypedQuery<User> query = em.createQuery(
                 "SELECT u FROM User u WHERE u.mail = :mail", User.class);
@@ -77,12 +88,22 @@ public class ServicesRequest {
         return query.getSingleResult();
     }
 
-    // Trouve un utilisateur par son ID.
+    // Trouve un utilisateur par son ID (lu dans le cache de second niveau s'il y est).
     public User findUserById(int id) {
-        TypedQuery<User> query = em.createQuery(
-                "SELECT u FROM User u WHERE u.usersID = :id", User.class);
-        query.setParameter("id", id);
-        return query.getSingleResult();
+        User user = em.find(User.class, id);
+        if (user == null) {
+            throw new NoResultException("Aucun utilisateur avec l'ID " + id + ".");
+        }
+        return user;
+    }
+
+    // Récupère la vue publique d'un utilisateur (sans mot de passe), ou 'null' s'il n'existe pas.
+    // La lecture par clé passe par em.find, donc par le cache de second niveau (région "users").
+    public UserSummaryDTO getUserSummary(int id) {
+        User user = em.find(User.class, id);
+        if (user == null) return null;
+        return new UserSummaryDTO(user.getUsersID(), user.getFirstName(), user.getLastName(), user.getMail(),
+                user.isAdmin(), user.getAvatarHash());
     }
 
     // Vérifie si un email existe déjà dans la BDD.
@@ -106,46 +127,96 @@ public class ServicesRequest {
         return uppercaseCount >= 1 && digitCount >= 3 && specialCount >= 2;
     }
 
-    // Hash un mot de passe avec BCrypt.
-    public String hashPassword(String password) {
-        return BCrypt.withDefaults().hashToString(12, password.toCharArray());
-    }
-
-    // Ajoute un utilisateur en hashant son mot de passe, s’il n'existe pas déjà.
+    // Ajoute un utilisateur, s’il n'existe pas déjà.
+    // Son mot de passe doit déjà être hashé (PasswordHasher), pour ne pas calculer le hash pendant la transaction.
     public boolean addUser(User user) {
         // Si le mail n'est pas disponible, retourne false.
         if (emailExists(user.getMail())) return false;
-        String password = user.getPassword();
-        user.setPassword(hashPassword(password));
         em.persist(user);
+
+        afterCommit(() -> {
+            userSearchIndex.put(user);
+            eventPublisher.publishEvent(new UsersChangedEvent(List.of(user.getUsersID())));
+        });
         return true;
     }
 
-    // Met à jour un utilisateur et rehash son mot de passe.
+    // Met à jour un utilisateur. Son mot de passe n'est pas recalculé : le champ contient déjà un hash,
+    // soit l'ancien (mot de passe inchangé), soit celui du nouveau mot de passe (PasswordHasher).
     public void updateUser(User user) {
-        String password = user.getPassword();
-        user.setPassword(hashPassword(password));
         em.merge(user);
+
+        afterCommit(() -> {
+            userSearchIndex.put(user);
+            eventPublisher.publishEvent(new UsersChangedEvent(List.of(user.getUsersID())));
+        });
+    }
+
+    // Remplace le hash du mot de passe d'un utilisateur (hash recalculé avec le coût configuré),
+    // uniquement si le hash enregistré est toujours 'oldHash'. Retourne true si le hash a été remplacé.
+    public boolean updatePasswordHash(String mail, String oldHash, String newHash) {
+        int updated = em.createQuery(
+                        "UPDATE User u SET u.password = :newHash WHERE u.mail = :mail AND u.password = :oldHash")
+                .setParameter("newHash", newHash)
+                .setParameter("mail", mail)
+                .setParameter("oldHash", oldHash)
+                .executeUpdate();
+        if (updated == 0) return false;
+
+        List<Integer> ids = em.createQuery("SELECT u.usersID FROM User u WHERE u.mail = :mail", Integer.class)
+                .setParameter("mail", mail)
+                .getResultList();
+        afterCommit(() -> eventPublisher.publishEvent(new UsersChangedEvent(ids)));
+        return true;
     }
 
     // Supprime un utilisateur via sa clé primaire.
     public void deleteUserById(int id) {
-        Query q = em.createQuery(
-                "SELECT DISTINCT m.channelID FROM Member m WHERE m.userID = :userId");
+        deleteUsersByIds(List.of(id));
+    }
+
+    // Supprime un ensemble d'utilisateurs en un nombre constant de requêtes groupées, quel que soit le nombre
+    // d'utilisateurs et de canaux concernés :
+    // - les canaux dont le créateur est supprimé sont transmis au plus ancien membre restant ;
+    // - les canaux qui n'ont plus aucun membre restant sont supprimés (avec leurs messages) ;
+    // - les adhésions des utilisateurs, puis les utilisateurs eux-mêmes, sont supprimés.
+    public void deleteUsersByIds(Collection<Integer> userIds) {
+        if (userIds.isEmpty()) return;
+        List<Integer> ids = new ArrayList<>(userIds);
+
+        // Canaux créés par un utilisateur supprimé et sans autre membre : ils disparaissent avec lui.
+        List<Integer> emptyChannelIds = em.createQuery(
+                        "SELECT DISTINCT c.channelID FROM Member c WHERE c.creator = true AND c.userID IN :ids " +
+                                "AND NOT EXISTS (SELECT o FROM Member o WHERE o.channelID = c.channelID AND o.userID NOT IN :ids)",
+                        Integer.class)
+                .setParameter("ids", ids)
+                .getResultList();
 
-        q.setParameter("userId", id);
+        // Les autres canaux créés par un utilisateur supprimé reviennent à leur plus ancien membre restant.
+        em.createQuery("UPDATE Member m SET m.creator = true WHERE m.membershipID IN (" +
+                        "SELECT MIN(o.membershipID) FROM Member o WHERE o.userID NOT IN :ids AND o.channelID IN (" +
+                        "SELECT c.channelID FROM Member c WHERE c.creator = true AND c.userID IN :ids) " +
+                        "GROUP BY o.channelID)")
+                .setParameter("ids", ids)
+                .executeUpdate();
 
-        List<Integer> channelsIDs = q.getResultList();
+        em.createQuery("DELETE FROM Member m WHERE m.userID IN :ids")
+                .setParameter("ids", ids)
+                .executeUpdate();
 
-        for (Integer channelId : channelsIDs) {
-            removeMemberFromChannel(channelId, id);
-        }
+        deleteChannelsByIds(emptyChannelIds);
 
+        em.createQuery("DELETE FROM User u WHERE u.usersID IN :ids")
+                .setParameter("ids", ids)
+                .executeUpdate();
 
-        User user = em.find(User.class, id);
-        if (user != null) {
-            em.remove(user);
-        }
+        afterCommit(() -> {
+            for (Integer id : ids) {
+                membershipIndex.removeUser(id);
+                userSearchIndex.remove(id);
+            }
+            eventPublisher.publishEvent(new UsersChangedEvent(ids));
+        });
     }
 
     // Retourne tous les utilisateurs de la BDD.
@@ -154,58 +225,68 @@ public class ServicesRequest {
         return q.getResultList();
     }
 
+    // Retourne une page d'utilisateurs pour le tableau de l'interface administrateur.
+    // Seules les colonnes affichées sont lues ; 'filter' (optionnel) est comparé au début du prénom, du nom ou du mail.
+    // 'sort' doit être l'une des colonnes autorisées (lastName par défaut).
+    public List<UserSummaryDTO> getUsersPage(String filter, String sort, boolean ascending, int page, int size) {
+        String column = switch (sort == null ? "" : sort) {
+            case "firstName", "mail", "admin" -> sort;
+            default -> "lastName";
+        };
+        String direction = ascending ? "ASC" : "DESC";
+
+        TypedQuery<UserSummaryDTO> query = em.createQuery(
+                "SELECT " + USER_SUMMARY + " " +
+                        "FROM User u" + userFilterClause(filter) +
+                        " ORDER BY u." + column + " " + direction + ", u.usersID " + direction,
+                UserSummaryDTO.class);
+        setUserFilter(query, filter);
+        query.setFirstResult(page * size);
+        query.setMaxResults(size);
+        return query.getResultList();
+    }
+
+    // Compte les utilisateurs correspondant au filtre du tableau administrateur.
+    public long countUsers(String filter) {
+        TypedQuery<Long> query = em.createQuery("SELECT COUNT(u) FROM User u" + userFilterClause(filter), Long.class);
+        setUserFilter(query, filter);
+        return query.getSingleResult();
+    }
+
     // ------------------- CHANNELS -------------------
 
     // Retourne tous les channels dont l’utilisateur est membre.
-    public List<Channel> getUsersMemberships(int userId) {
+    // Les canaux expirés sont seulement filtrés : leur suppression est faite par le ChannelExpiryScheduler.
+    public List<ChannelSummaryDTO> getUsersMemberships(int userId) {
         Calendar now = Calendar.getInstance();
 
-        Query q = em.createQuery(
-                "SELECT c FROM Channel c JOIN Member m ON c.channelId = m.channelID WHERE m.userID = :userId and m.creator = False and c.date < :now");
-
-        q.setParameter("userId", userId);
-        q.setParameter("now", now);
-
-        List<Channel> results = q.getResultList();
-
-        Iterator<Channel> iterator = results.iterator();
-        while (iterator.hasNext()) {
-            Channel c = iterator.next();
-            if (c.getEndOfValidity().before(now)) {
-                deleteChannelById(c.getChannelId());
-                iterator.remove();
-            }
-        }
-
-        return results;
+        return em.createQuery(
+                        "SELECT " + CHANNEL_SUMMARY + " FROM Channel c JOIN Member m ON c.channelId = m.channelID " +
+                                "WHERE m.userID = :userId and m.creator = False and c.date < :now and c.endOfValidity >= :now",
+                        ChannelSummaryDTO.class)
+                .setParameter("userId", userId)
+                .setParameter("now", now)
+                .getResultList();
     }
 
-    // Retourne tous les channels dont l’utilisateur est propriétaire.
-    public List<Channel> getUsersOwnerships(int userId) {
+    // Retourne tous les channels dont l’utilisateur est propriétaire (hors canaux expirés).
+    public List<ChannelSummaryDTO> getUsersOwnerships(int userId) {
         Calendar now = Calendar.getInstance();
 
-        Query q = em.createQuery(
-                "SELECT c FROM Channel c JOIN Member m ON c.channelId = m.channelID WHERE m.userID = :userId and m.creator = True");
-
-        q.setParameter("userId", userId);
-
-        List<Channel> results = q.getResultList();
-
-        Iterator<Channel> iterator = results.iterator();
-        while (iterator.hasNext()) {
-            Channel c = iterator.next();
-            if (c.getEndOfValidity().before(now)) {
-                deleteChannelById(c.getChannelId());
-                iterator.remove();
-            }
-        }
-
-        return results;
+        return em.createQuery(
+                        "SELECT " + CHANNEL_SUMMARY + " FROM Channel c JOIN Member m ON c.channelId = m.channelID " +
+                                "WHERE m.userID = :userId and m.creator = True and c.endOfValidity >= :now",
+                        ChannelSummaryDTO.class)
+                .setParameter("userId", userId)
+                .setParameter("now", now)
+                .getResultList();
     }
 
     // Ajoute un canal.
     public void addChannel(Channel ch) {
         em.persist(ch);
+
+        afterCommit(() -> channelExpiryScheduler.schedule(ch.getChannelId(), ch.getEndOfValidity()));
     }
 
     // Récupère un canal par son ID.
@@ -213,33 +294,117 @@ public class ServicesRequest {
         return em.find(Channel.class, id);
     }
 
-    // Supprime un canal et ses membres associés.
+    // Supprime un canal, ses membres et ses messages associés.
     public void deleteChannelById(int id) {
+        deleteChannelsByIds(List.of(id));
+    }
 
-        // On supprime les membres du canal.
-        Query deleteMembers = em.createQuery("DELETE FROM Member m WHERE m.channelID = :channelId");
-        deleteMembers.setParameter("channelId", id);
-        deleteMembers.executeUpdate();
+    // Supprime un ensemble de canaux, leurs membres et leurs messages, en trois requêtes groupées.
+    // Une fois la transaction validée, l'index des membres est mis à jour et les sessions WebSocket sont fermées.
+    public void deleteChannelsByIds(Collection<Integer> channelIds) {
+        if (channelIds.isEmpty()) return;
+        List<Integer> ids = new ArrayList<>(channelIds);
+
+        em.createQuery("DELETE FROM Member m WHERE m.channelID IN :ids")
+                .setParameter("ids", ids)
+                .executeUpdate();
+        em.createQuery("DELETE FROM Message msg WHERE msg.channelID IN :ids")
+                .setParameter("ids", ids)
+                .executeUpdate();
+        em.createQuery("DELETE FROM Channel c WHERE c.channelId IN :ids")
+                .setParameter("ids", ids)
+                .executeUpdate();
+
+        afterCommit(() -> {
+            for (Integer id : ids) {
+                membershipIndex.removeChannel(id);
+            }
+            eventPublisher.publishEvent(new ChannelsDeletedEvent(ids));
+        });
+    }
 
-        // Ensuite, on supprime le canal.
+    // Récupère la vue d'un canal, ou 'null' s'il n'existe pas.
+    // La lecture par clé passe par em.find, donc par le cache de second niveau (région "channels").
+    public ChannelSummaryDTO getChannelSummary(int id) {
         Channel channel = em.find(Channel.class, id);
-        if (channel != null) {
-            em.remove(channel);
-        }
+        if (channel == null) return null;
+        return new ChannelSummaryDTO(channel.getChannelId(), channel.getTitle(), channel.getDescription(),
+                channel.getDate(), channel.getEndOfValidity());
     }
 
     // Récupère tous les channels.
-    public List<Channel> getChannels() {
-        Query q = em.createQuery("SELECT c FROM Channel c");
-        return q.getResultList();
+    public List<ChannelSummaryDTO> getChannels() {
+        return em.createQuery("SELECT " + CHANNEL_SUMMARY + " FROM Channel c", ChannelSummaryDTO.class)
+                .getResultList();
     }
 
-    // Récupère tous les membres (utilisateurs) d’un canal donné
-    public List<User> getChannelsMembers(int channelId) {
-        Query q = em.createQuery(
-                "SELECT u FROM User u JOIN Member m ON m.userID = u.usersID WHERE m.channelID = :channelId");
-        q.setParameter("channelId", channelId);
-        return q.getResultList();
+    // Récupère tous les membres (utilisateurs) d’un canal donné, sans mot de passe ni image.
+    public List<UserSummaryDTO> getChannelsMembers(int channelId) {
+        return em.createQuery(
+                        "SELECT " + USER_SUMMARY + " FROM User u JOIN Member m ON m.userID = u.usersID " +
+                                "WHERE m.channelID = :channelId",
+                        UserSummaryDTO.class)
+                .setParameter("channelId", channelId)
+                .getResultList();
+    }
+
+    // Construit l'écran d'accueil d'un utilisateur en quatre requêtes, quel que soit son nombre de canaux :
+    // l'utilisateur, ses canaux avec son rôle, le nombre de membres par canal, puis les 'previewSize' premiers
+    // membres de chaque canal (créateur en tête). Retourne 'null' si l'utilisateur n'existe pas.
+    // Mêmes canaux que getUsersOwnerships (créés, non expirés) et getUsersMemberships (invitations en cours).
+    public UserBootstrapDTO getUserBootstrap(int userId, int previewSize) {
+        UserSummaryDTO user = getUserSummary(userId);
+        if (user == null) return null;
+
+        Calendar now = Calendar.getInstance();
+        List<Object[]> channelRows = em.createQuery(
+                        "SELECT c.channelId, c.title, c.description, c.date, c.endOfValidity, m.creator " +
+                                "FROM Channel c JOIN Member m ON c.channelId = m.channelID " +
+                                "WHERE m.userID = :userId and c.endOfValidity >= :now and (m.creator = True or c.date < :now) " +
+                                "ORDER BY m.creator DESC, c.date",
+                        Object[].class)
+                .setParameter("userId", userId)
+                .setParameter("now", now)
+                .getResultList();
+        if (channelRows.isEmpty()) return new UserBootstrapDTO(user, List.of());
+
+        List<Integer> channelIds = new ArrayList<>(channelRows.size());
+        for (Object[] row : channelRows) {
+            channelIds.add((Integer) row[0]);
+        }
+
+        // Nombre de membres de chaque canal.
+        Map<Integer, Long> memberCounts = new HashMap<>();
+        List<Object[]> countRows = em.createQuery(
+                        "SELECT m.channelID, COUNT(m) FROM Member m WHERE m.channelID IN :ids GROUP BY m.channelID",
+                        Object[].class)
+                .setParameter("ids", channelIds)
+                .getResultList();
+        for (Object[] row : countRows) {
+            memberCounts.put((Integer) row[0], (Long) row[1]);
+        }
+
+        // Premiers membres de chaque canal, par une requête SQL (fonction de fenêtre).
+        Map<Integer, List<UserSummaryDTO>> previews = new HashMap<>();
+        Query previewQuery = em.createNativeQuery(MEMBER_PREVIEW_SQL)
+                .setParameter("ids", channelIds)
+                .setParameter("previewSize", previewSize);
+        List<Object[]> previewRows = previewQuery.getResultList();
+        for (Object[] row : previewRows) {
+            previews.computeIfAbsent(((Number) row[0]).intValue(), id -> new ArrayList<>())
+                    .add(new UserSummaryDTO(((Number) row[1]).intValue(), (String) row[2], (String) row[3],
+                            (String) row[4], (Boolean) row[5], (String) row[6]));
+        }
+
+        List<ChannelBootstrapDTO> channels = new ArrayList<>(channelRows.size());
+        for (Object[] row : channelRows) {
+            Integer channelId = (Integer) row[0];
+            ChannelSummaryDTO channel = new ChannelSummaryDTO(
+                    channelId, (String) row[1], (String) row[2], (Calendar) row[3], (Calendar) row[4]);
+            channels.add(new ChannelBootstrapDTO(channel, (Boolean) row[5],
+                    memberCounts.getOrDefault(channelId, 0L), previews.getOrDefault(channelId, List.of())));
+        }
+        return new UserBootstrapDTO(user, channels);
     }
 
     // ------------------- MEMBERS -------------------
@@ -263,10 +428,63 @@ public class ServicesRequest {
     // Ajoute un membre à un canal.
     public void addMember(Member member) {
         em.persist(member);
+
+        int channelId = member.getChannelID();
+        int userId = member.getUserID();
+        afterCommit(() -> {
+            membershipIndex.add(channelId, userId);
+            eventPublisher.publishEvent(new MembershipsChangedEvent(List.of(channelId)));
+        });
     }
 
-    // Supprime un membre à partir de son userId et du canal.
-    public void removeMemberFromChannel(int channelId, int userId) {
+    // Ajoute une liste de membres en une seule transaction et retourne le nombre de membres réellement ajoutés.
+    // Les adhésions déjà existantes (ou en double dans la liste) sont ignorées : elles sont détectées en une requête.
+    // Les insertions sont envoyées par lots JDBC (identifiants tirés par blocs de la séquence members_seq).
+    public int addMembers(List<Member> members) {
+        if (members.isEmpty()) return 0;
+
+        Set<Integer> channelIds = new HashSet<>();
+        Set<Integer> userIds = new HashSet<>();
+        for (Member member : members) {
+            channelIds.add(member.getChannelID());
+            userIds.add(member.getUserID());
+        }
+
+        // Adhésions existantes parmi les canaux et utilisateurs concernés, sous forme de clés "canal:utilisateur".
+        Set<String> existing = new HashSet<>();
+        List<Object[]> rows = em.createQuery(
+                        "SELECT m.channelID, m.userID FROM Member m WHERE m.channelID IN :channelIds AND m.userID IN :userIds",
+                        Object[].class)
+                .setParameter("channelIds", channelIds)
+                .setParameter("userIds", userIds)
+                .getResultList();
+        for (Object[] row : rows) {
+            existing.add(row[0] + ":" + row[1]);
+        }
+
+        em.unwrap(Session.class).setJdbcBatchSize(memberBatchSize);
+
+        List<Member> added = new ArrayList<>();
+        for (Member member : members) {
+            if (existing.add(member.getChannelID() + ":" + member.getUserID())) {
+                em.persist(member);
+                added.add(member);
+            }
+        }
+        em.flush();
+
+        afterCommit(() -> {
+            for (Member member : added) {
+                membershipIndex.add(member.getChannelID(), member.getUserID());
+            }
+            eventPublisher.publishEvent(new MembershipsChangedEvent(
+                    added.stream().map(Member::getChannelID).distinct().toList()));
+        });
+        return added.size();
+    }
+
+    // Supprime un membre à partir de son userId et du canal. Retourne false si l'utilisateur n'en est pas membre.
+    public boolean removeMemberFromChannel(int channelId, int userId) {
         try {
             TypedQuery<Member> query1 = em.createQuery(
                     "SELECT m FROM Member m WHERE m.channelID = :channelId AND m.userID = :userId",
@@ -289,15 +507,18 @@ public class ServicesRequest {
                     members.get(0).setCreator(true);
                     em.merge(members.get(0));
                     em.remove(member);
+                    afterCommit(() -> removeFromIndex(channelId, userId));
                 }else{
                     deleteChannelById(channelId);
                 }
             } else {
                 // Si le membre n'est pas créateur, on le supprime sans vérification.
                 em.remove(member);
+                afterCommit(() -> removeFromIndex(channelId, userId));
             }
+            return true;
         } catch (NoResultException e) {
-            System.out.println("Aucun membre trouvé pour suppression (channelId: " + channelId + ", userId: " + userId + ")");
+            return false;
         }
     }
 
@@ -314,4 +535,86 @@ public class ServicesRequest {
 
         return count != null && count > 0;
     }
+
+    // ------------------- MESSAGES -------------------
+
+    // Retourne une page de l'historique d'un canal, du plus récent au plus ancien.
+    // Pagination par curseur (keyset) : on reprend strictement avant le couple (timestamp, id) du dernier message
+    // reçu, ce qui utilise l'index (channelID, timestamp, messageID) quelle que soit la profondeur de la page.
+    // 'beforeTimestamp' et 'beforeId' sont nuls pour la première page.
+    public List<MessageDTO> getChannelMessages(int channelId, Calendar beforeTimestamp, Long beforeId, int limit) {
+        String jpql = "SELECT new fr.utc.sr03.services.MessageDTO(m.messageID, m.userID, m.content, m.timestamp) " +
+                "FROM Message m WHERE m.channelID = :channelId ";
+        if (beforeTimestamp != null) {
+            jpql += "AND (m.timestamp < :ts OR (m.timestamp = :ts AND m.messageID < :id)) ";
+        }
+        jpql += "ORDER BY m.timestamp DESC, m.messageID DESC";
+
+        TypedQuery<MessageDTO> query = em.createQuery(jpql, MessageDTO.class);
+        query.setParameter("channelId", channelId);
+        if (beforeTimestamp != null) {
+            query.setParameter("ts", beforeTimestamp);
+            query.setParameter("id", beforeId);
+        }
+        query.setMaxResults(limit);
+        return query.getResultList();
+    }
+
+    // ------------------- UTILITAIRES -------------------
+
+    // Caractère d'échappement des motifs LIKE (les caractères saisis sont comparés littéralement).
+    private static final char LIKE_ESCAPE = '!';
+
+    // Clause WHERE du filtre du tableau administrateur (vide sans filtre).
+    private static String userFilterClause(String filter) {
+        if (filter == null || filter.isBlank()) return "";
+        String like = " LIKE :filter ESCAPE '" + LIKE_ESCAPE + "'";
+        return " WHERE LOWER(u.firstName)" + like + " OR LOWER(u.lastName)" + like + " OR LOWER(u.mail)" + like;
+    }
+
+    // Le filtre est un préfixe : '%' et '_' saisis par l'administrateur ne sont pas des jokers.
+    private static void setUserFilter(Query query, String filter) {
+        if (filter == null || filter.isBlank()) return;
+        query.setParameter("filter", escapeLike(filter.trim().toLowerCase()) + "%");
+    }
+
+    private static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 4);
+        for (char c : value.toCharArray()) {
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) escaped.append(LIKE_ESCAPE);
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    // Construit le UserDTO renvoyé au front (sans mot de passe, avec l'empreinte de l'avatar).
+    public UserDTO toUserDTO(User user) {
+        UserDTO dto = new UserDTO(
+                user.getUsersID(), user.getFirstName(), user.getLastName(),
+                user.getMail(), "", user.isAdmin(), null);
+        dto.setAvatarHash(user.getAvatarHash());
+        return dto;
+    }
+
+    // Retire un membre de l'index local, et prévient les autres instances.
+    private void removeFromIndex(int channelId, int userId) {
+        membershipIndex.remove(channelId, userId);
+        eventPublisher.publishEvent(new MembershipsChangedEvent(List.of(channelId)));
+    }
+
+    // Exécute une action une fois la transaction courante validée (ou immédiatement s'il n'y en a pas).
+    // Les index en mémoire ne doivent refléter que des modifications réellement enregistrées en BDD.
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
 }
@@ -0,0 +1,23 @@
+package fr.utc.sr03.services;
+
+import java.util.List;
+
+// Cette classe regroupe tout ce dont l'écran d'accueil du front a besoin, en une seule réponse :
+// l'utilisateur et ses salons (créés ou invitations en cours), avec leurs membres.
+public class UserBootstrapDTO {
+    private UserSummaryDTO user;
+    private List<ChannelBootstrapDTO> channels;
+
+    public UserBootstrapDTO(UserSummaryDTO user, List<ChannelBootstrapDTO> channels) {
+        this.user = user;
+        this.channels = channels;
+    }
+
+    public UserSummaryDTO getUser() {
+        return user;
+    }
+
+    public List<ChannelBootstrapDTO> getChannels() {
+        return channels;
+    }
+}
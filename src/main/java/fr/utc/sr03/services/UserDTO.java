@@ -9,7 +9,9 @@ public class UserDTO {
     private String mail;
     private String password;
     private boolean admin;
-    private String avatarBase64;
+    private String avatarBase64;   // Image envoyée par le front lors d'une création ou modification.
+    private String avatarHash;     // Empreinte de l'avatar renvoyée au front (image servie par /api/avatars/{hash}).
+    private String token;          // Jeton d'accès renvoyé au front après connexion ou inscription.
 
     public UserDTO(Integer usersID,String firstName, String lastName, String mail, String password, boolean admin, String avatarBase64) {
         this.usersID = usersID;
@@ -76,4 +78,20 @@ public class UserDTO {
     public void setAvatarBase64(String avatarBase64) {
         this.avatarBase64 = avatarBase64;
     }
+
+    public String getAvatarHash() {
+        return avatarHash;
+    }
+
+    public void setAvatarHash(String avatarHash) {
+        this.avatarHash = avatarHash;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
 }
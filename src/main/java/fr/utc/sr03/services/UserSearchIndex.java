@@ -0,0 +1,208 @@
+package fr.utc.sr03.services;
+
+import fr.utc.sr03.model.User;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Index de recherche des utilisateurs en mémoire, pour la saisie semi-automatique (ajout de membres).
+// Chaque utilisateur est indexé par les mots de son prénom, de son nom et de son mail (en minuscules, sans accents),
+// dans une table triée : une recherche par préfixe ne parcourt que les mots qui commencent par le texte saisi.
+// L'index est chargé au démarrage puis mis à jour par ServicesRequest après chaque création, modification ou suppression ;
+// les modifications faites par les autres instances sont rechargées depuis la BDD (reload, reloadAll).
+@Component
+public class UserSearchIndex {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    // Mot indexé -> IDs des utilisateurs qui le contiennent.
+    private final ConcurrentSkipListMap<String, Set<Integer>> usersByToken = new ConcurrentSkipListMap<>();
+
+    // Données affichées dans les résultats, par ID d'utilisateur.
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+
+    // Informations d'un utilisateur indexé (sans mot de passe ni image), avec sa clé de tri alphabétique.
+    private record Entry(int userId, String firstName, String lastName, String mail, boolean admin,
+                         String avatarHash, Set<String> nameTokens, Set<String> mailTokens, String sortKey) {}
+
+    // Charge tous les utilisateurs existants.
+    @PostConstruct
+    public void warmUp() {
+        List<Object[]> rows = em.createQuery(
+                        "SELECT u.usersID, u.firstName, u.lastName, u.mail, u.admin, u.avatarHash FROM User u",
+                        Object[].class)
+                .getResultList();
+
+        for (Object[] row : rows) {
+            put((Integer) row[0], (String) row[1], (String) row[2], (String) row[3], (Boolean) row[4], (String) row[5]);
+        }
+    }
+
+    // Ajoute ou met à jour un utilisateur dans l'index.
+    public void put(User user) {
+        put(user.getUsersID(), user.getFirstName(), user.getLastName(), user.getMail(), user.isAdmin(), user.getAvatarHash());
+    }
+
+    // Retire un utilisateur de l'index.
+    public void remove(int userId) {
+        Entry old = entries.remove(userId);
+        if (old == null) return;
+
+        for (String token : old.nameTokens()) unindex(token, userId);
+        for (String token : old.mailTokens()) unindex(token, userId);
+    }
+
+    // Recharge un utilisateur depuis la BDD (il est retiré de l'index s'il n'existe plus).
+    // La lecture passe par une requête, et non par em.find : le cache de second niveau de cette instance
+    // peut ne pas encore refléter la modification faite par une autre instance.
+    public void reload(int userId) {
+        List<Object[]> rows = em.createQuery(
+                        "SELECT u.usersID, u.firstName, u.lastName, u.mail, u.admin, u.avatarHash FROM User u " +
+                                "WHERE u.usersID = :userId", Object[].class)
+                .setParameter("userId", userId)
+                .getResultList();
+
+        if (rows.isEmpty()) {
+            remove(userId);
+        } else {
+            Object[] row = rows.get(0);
+            put((Integer) row[0], (String) row[1], (String) row[2], (String) row[3], (Boolean) row[4], (String) row[5]);
+        }
+    }
+
+    // Recharge tous les utilisateurs (après une interruption de la synchronisation entre instances).
+    public void reloadAll() {
+        Set<Integer> before = new HashSet<>(entries.keySet());
+        List<Object[]> rows = em.createQuery(
+                        "SELECT u.usersID, u.firstName, u.lastName, u.mail, u.admin, u.avatarHash FROM User u",
+                        Object[].class)
+                .getResultList();
+
+        for (Object[] row : rows) {
+            put((Integer) row[0], (String) row[1], (String) row[2], (String) row[3], (Boolean) row[4], (String) row[5]);
+            before.remove((Integer) row[0]);
+        }
+        for (Integer userId : before) {
+            remove(userId);
+        }
+    }
+
+    // Recherche les utilisateurs dont chaque mot saisi est le début d'un mot de leur prénom, nom ou mail.
+    // Les résultats sont classés (mot exact, puis début de prénom/nom, puis début de mail) et limités à 'limit'.
+    public List<UserDTO> search(String query, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) return List.of();
+
+        // Candidats : utilisateurs correspondant au premier mot saisi.
+        Set<Integer> candidates = new HashSet<>();
+        String first = terms.get(0);
+        for (Map.Entry<String, Set<Integer>> e : usersByToken.tailMap(first, true).entrySet()) {
+            if (!e.getKey().startsWith(first)) break;
+            candidates.addAll(e.getValue());
+        }
+
+        // On garde les candidats qui correspondent à tous les mots, avec leur score.
+        List<Map.Entry<Entry, Integer>> matches = new ArrayList<>();
+        for (Integer userId : candidates) {
+            Entry entry = entries.get(userId);
+            if (entry == null) continue;
+
+            int score = 0;
+            for (String term : terms) {
+                int termScore = score(entry, term);
+                if (termScore == 0) {
+                    score = 0;
+                    break;
+                }
+                score += termScore;
+            }
+            if (score > 0) matches.add(Map.entry(entry, score));
+        }
+
+        return matches.stream()
+                .sorted(Comparator.<Map.Entry<Entry, Integer>>comparingInt(Map.Entry::getValue).reversed()
+                        .thenComparing(m -> m.getKey().sortKey()))
+                .limit(limit)
+                .map(m -> toDTO(m.getKey()))
+                .toList();
+    }
+
+    // Méthodes privées :
+
+    private void put(int userId, String firstName, String lastName, String mail, boolean admin, String avatarHash) {
+        remove(userId);
+
+        Set<String> nameTokens = new HashSet<>(tokenize(firstName + " " + lastName));
+        Set<String> mailTokens = new HashSet<>(tokenize(mail));
+
+        Entry entry = new Entry(userId, firstName, lastName, mail, admin, avatarHash, nameTokens, mailTokens,
+                normalize(lastName + " " + firstName));
+        entries.put(userId, entry);
+
+        for (String token : nameTokens) index(token, userId);
+        for (String token : mailTokens) index(token, userId);
+    }
+
+    // Ajout dans compute : un unindex simultané qui vide l'ensemble (et le retire) ne peut pas perdre cet ajout.
+    private void index(String token, int userId) {
+        usersByToken.compute(token, (t, users) -> {
+            if (users == null) users = ConcurrentHashMap.newKeySet();
+            users.add(userId);
+            return users;
+        });
+    }
+
+    private void unindex(String token, int userId) {
+        usersByToken.computeIfPresent(token, (t, users) -> {
+            users.remove(userId);
+            return users.isEmpty() ? null : users;
+        });
+    }
+
+    // Score d'un mot saisi pour un utilisateur (0 si aucun de ses mots ne commence par ce texte).
+    private static int score(Entry entry, String term) {
+        int best = 0;
+        for (String token : entry.nameTokens()) {
+            if (token.equals(term)) return 3;
+            if (token.startsWith(term)) best = 2;
+        }
+        if (best > 0) return best;
+
+        for (String token : entry.mailTokens()) {
+            if (token.startsWith(term)) return 1;
+        }
+        return 0;
+    }
+
+    // Découpe un texte en mots normalisés (séparés par les espaces et la ponctuation d'un mail).
+    private static List<String> tokenize(String text) {
+        if (text == null) return List.of();
+
+        List<String> tokens = new ArrayList<>();
+        for (String token : normalize(text).split("[\\s@._\\-+]+")) {
+            if (!token.isEmpty()) tokens.add(token);
+        }
+        return tokens;
+    }
+
+    // Met un texte en minuscules et retire ses accents.
+    private static String normalize(String text) {
+        if (text == null) return "";
+        return Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT);
+    }
+
+    private static UserDTO toDTO(Entry entry) {
+        UserDTO dto = new UserDTO(entry.userId(), entry.firstName(), entry.lastName(), entry.mail(), "", entry.admin(), null);
+        dto.setAvatarHash(entry.avatarHash());
+        return dto;
+    }
+}
@@ -0,0 +1,46 @@
+package fr.utc.sr03.services;
+
+// Cette classe représente un utilisateur en lecture seule : ligne du tableau de l'interface administrateur,
+// profil ou membre d'un canal renvoyé par l'API (sans mot de passe ni image : l'avatar est chargé à part via son empreinte).
+public class UserSummaryDTO {
+    private int usersID;
+    private String firstName;
+    private String lastName;
+    private String mail;
+    private boolean admin;
+    private String avatarHash;
+
+    // Constructeur utilisé directement par la requête JPQL (projection "SELECT new ...").
+    public UserSummaryDTO(Integer usersID, String firstName, String lastName, String mail, Boolean admin, String avatarHash) {
+        this.usersID = usersID;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.mail = mail;
+        this.admin = admin;
+        this.avatarHash = avatarHash;
+    }
+
+    public int getUsersID() {
+        return usersID;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public String getMail() {
+        return mail;
+    }
+
+    public boolean isAdmin() {
+        return admin;
+    }
+
+    public String getAvatarHash() {
+        return avatarHash;
+    }
+}
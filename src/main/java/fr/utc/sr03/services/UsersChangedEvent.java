@@ -0,0 +1,17 @@
+package fr.utc.sr03.services;
+
+import java.util.List;
+
+// Événement publié (après commit) lorsque des utilisateurs ont été créés, modifiés ou supprimés.
+// Il permet notamment aux autres instances de l'application de mettre à jour leurs index de ces utilisateurs.
+public class UsersChangedEvent {
+    private final List<Integer> userIds;
+
+    public UsersChangedEvent(List<Integer> userIds) {
+        this.userIds = userIds;
+    }
+
+    public List<Integer> getUserIds() {
+        return userIds;
+    }
+}
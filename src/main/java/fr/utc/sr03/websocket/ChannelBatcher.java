@@ -0,0 +1,164 @@
+package fr.utc.sr03.websocket;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+// Regroupement adaptatif des messages diffusés dans les canaux très actifs.
+// Tant qu'un canal reste calme, chaque message est diffusé immédiatement, dans sa propre trame.
+// Lorsqu'il dépasse un débit donné (messages par seconde), les messages reçus pendant une courte fenêtre
+// (quelques millisecondes) sont réunis dans une seule trame, un tableau JSON "[msg1, msg2, ...]" :
+// chaque destinataire reçoit alors une trame par fenêtre au lieu d'une par message.
+// Les messages d'un canal sont toujours diffusés dans leur ordre d'arrivée.
+// Désactivé, le regroupement ne crée aucun thread et transmet chaque message tel quel.
+public class ChannelBatcher {
+
+    private final boolean enabled;
+
+    // Durée (ms) pendant laquelle les messages d'un canal actif sont accumulés.
+    private final long windowMs;
+
+    // Débit (messages par seconde) à partir duquel un canal est considéré comme actif.
+    private final int hotRate;
+
+    // Nombre maximal de messages par trame regroupée (la trame est envoyée dès qu'il est atteint).
+    private final int maxBatchSize;
+
+    // État de chaque canal ayant reçu un message.
+    private final Map<Integer, ChannelState> states = new ConcurrentHashMap<>();
+
+    // Planification de l'envoi des trames regroupées (null si le regroupement est désactivé).
+    private final ScheduledExecutorService scheduler;
+
+    // Compteurs pour la supervision.
+    private final AtomicLong immediate = new AtomicLong();
+    private final AtomicLong batched = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    // Débit et messages en attente d'un canal. Toute diffusion d'un canal se fait sous son verrou,
+    // ce qui garantit l'ordre des messages entre envois immédiats et trames regroupées.
+    private static class ChannelState {
+        long rateWindowStart;
+        int currentCount;
+        int previousCount;
+        List<String> pending = new ArrayList<>();
+    }
+
+    public ChannelBatcher(boolean enabled, long windowMs, int hotRate, int maxBatchSize) {
+        this.enabled = enabled;
+        this.windowMs = windowMs;
+        this.hotRate = hotRate;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = enabled ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ws-batcher");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    // Diffuse un message (texte JSON) dans un canal, immédiatement ou avec les autres messages de la fenêtre.
+    // 'sink' effectue la diffusion d'une trame (ID du canal, texte de la trame).
+    public void submit(int channelId, String payload, BiConsumer<Integer, String> sink) {
+        if (!enabled) {
+            sink.accept(channelId, payload);
+            return;
+        }
+
+        ChannelState state = states.computeIfAbsent(channelId, id -> new ChannelState());
+        synchronized (state) {
+            boolean hot = recordAndCheckRate(state);
+
+            // Des messages attendent déjà : le nouveau message passe après eux.
+            if (!state.pending.isEmpty()) {
+                state.pending.add(payload);
+                batched.incrementAndGet();
+                if (state.pending.size() >= maxBatchSize) flush(channelId, state, sink);
+                return;
+            }
+
+            if (!hot) {
+                immediate.incrementAndGet();
+                sink.accept(channelId, payload);
+                return;
+            }
+
+            // Premier message d'une fenêtre : on planifie l'envoi de la trame regroupée.
+            state.pending.add(payload);
+            batched.incrementAndGet();
+            try {
+                scheduler.schedule(() -> {
+                    synchronized (state) {
+                        flush(channelId, state, sink);
+                    }
+                }, windowMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Arrêt de l'application : on envoie sans attendre.
+                flush(channelId, state, sink);
+            }
+        }
+    }
+
+    // Oublie l'état d'un canal qui n'a plus de session locale.
+    public void forget(int channelId) {
+        states.remove(channelId);
+    }
+
+    public void shutdown() {
+        if (scheduler != null) scheduler.shutdown();
+    }
+
+    // Statistiques : configuration, messages envoyés immédiatement ou regroupés, trames regroupées envoyées.
+    public Map<String, Object> getStats() {
+        long batchCount = batches.get();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("windowMs", windowMs);
+        stats.put("hotRate", hotRate);
+        stats.put("maxBatchSize", maxBatchSize);
+        stats.put("immediate", immediate.get());
+        stats.put("batched", batched.get());
+        stats.put("batches", batchCount);
+        stats.put("avgBatchSize", batchCount == 0 ? 0 : (double) batched.get() / batchCount);
+        return stats;
+    }
+
+    // Méthodes privées :
+
+    // Compte le message dans la seconde en cours. Le canal est actif si la seconde en cours
+    // ou la précédente a atteint le débit configuré.
+    private boolean recordAndCheckRate(ChannelState state) {
+        long now = System.currentTimeMillis();
+        long elapsed = now - state.rateWindowStart;
+        if (elapsed >= 1000) {
+            state.previousCount = elapsed < 2000 ? state.currentCount : 0;
+            state.currentCount = 0;
+            state.rateWindowStart = now;
+        }
+        state.currentCount++;
+        return Math.max(state.currentCount, state.previousCount) >= hotRate;
+    }
+
+    // Envoie les messages en attente d'un canal (appelé sous le verrou du canal).
+    // Un message seul est envoyé tel quel ; plusieurs messages forment un tableau JSON.
+    private void flush(int channelId, ChannelState state, BiConsumer<Integer, String> sink) {
+        List<String> pending = state.pending;
+        if (pending.isEmpty()) return;
+        state.pending = new ArrayList<>();
+
+        if (pending.size() == 1) {
+            sink.accept(channelId, pending.get(0));
+        } else {
+            sink.accept(channelId, "[" + String.join(",", pending) + "]");
+        }
+        batches.incrementAndGet();
+    }
+}
@@ -0,0 +1,23 @@
+package fr.utc.sr03.websocket;
+
+// Bus de diffusion des messages entre les différentes instances (noeuds) de l'application.
+// Chaque handler WebSocket s'abonne aux canaux pour lesquels il a des sessions locales, publie les messages
+// qu'il reçoit de ses clients et reçoit en retour ceux publiés par les autres handlers abonnés au même canal.
+public interface ChannelMessageBus {
+
+    // Abonne un handler aux messages d'un canal (sans effet s'il est déjà abonné).
+    void subscribe(int channelId, ChannelMessageListener listener);
+
+    // Désabonne un handler d'un canal.
+    void unsubscribe(int channelId, ChannelMessageListener listener);
+
+    // Publie un message à tous les handlers abonnés au canal, sauf à celui qui l'émet ('origin'),
+    // qui l'a déjà diffusé à ses propres sessions.
+    void publish(int channelId, String payload, ChannelMessageListener origin);
+
+    // Publie aux autres noeuds un événement de synchronisation (texte court), sans le remettre à ce noeud.
+    void publishSync(String event);
+
+    // Enregistre le destinataire des événements de synchronisation publiés par les autres noeuds.
+    void setSyncListener(ClusterSyncListener listener);
+}
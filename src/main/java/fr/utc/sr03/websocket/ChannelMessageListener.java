@@ -0,0 +1,8 @@
+package fr.utc.sr03.websocket;
+
+// Destinataire des messages publiés sur le ChannelMessageBus (en pratique, un handler WebSocket).
+public interface ChannelMessageListener {
+
+    // Appelé lorsqu'un message publié par un autre handler arrive pour un canal auquel on est abonné.
+    void onChannelMessage(int channelId, String payload);
+}
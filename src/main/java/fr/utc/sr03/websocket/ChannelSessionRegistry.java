@@ -0,0 +1,70 @@
+package fr.utc.sr03.websocket;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+
+// Registre des sessions WebSocket actives, classées par ID de canal.
+// - l'ajout et le retrait d'une session sont en O(1) (ensembles concurrents, sans verrou global) ;
+// - le parcours des sessions d'un canal ne prend aucun verrou et tolère les modifications concurrentes ;
+// - un canal sans session est retiré du registre, de façon atomique avec le retrait de sa dernière session.
+public class ChannelSessionRegistry {
+
+    private final Map<Integer, Set<OutboundSession>> sessionsByChannel = new ConcurrentHashMap<>();
+
+    // Appelé lorsqu'un canal reçoit sa première session, puis lorsqu'il perd sa dernière.
+    // Ces actions sont exécutées pendant la mise à jour du canal (donc dans l'ordre) : elles doivent être
+    // rapides et ne pas utiliser le registre.
+    private final IntConsumer onChannelOpened;
+    private final IntConsumer onChannelClosed;
+
+    public ChannelSessionRegistry(IntConsumer onChannelOpened, IntConsumer onChannelClosed) {
+        this.onChannelOpened = onChannelOpened;
+        this.onChannelClosed = onChannelClosed;
+    }
+
+    // Ajoute une session à un canal.
+    public void add(int channelId, OutboundSession session) {
+        sessionsByChannel.compute(channelId, (id, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+                onChannelOpened.accept(id);
+            }
+            sessions.add(session);
+            return sessions;
+        });
+    }
+
+    // Retire une session d'un canal. Le canal est supprimé du registre s'il n'a plus de session.
+    public void remove(int channelId, OutboundSession session) {
+        sessionsByChannel.computeIfPresent(channelId, (id, sessions) -> {
+            if (!sessions.remove(session) || !sessions.isEmpty()) return sessions;
+            onChannelClosed.accept(id);
+            return null;
+        });
+    }
+
+    // Retourne les sessions d'un canal (vue concurrente, éventuellement vide), parcourable sans verrou.
+    public Collection<OutboundSession> getSessions(int channelId) {
+        Set<OutboundSession> sessions = sessionsByChannel.get(channelId);
+        return sessions != null ? sessions : Collections.emptySet();
+    }
+
+    // Parcourt toutes les sessions de tous les canaux.
+    public void forEach(BiConsumer<Integer, OutboundSession> action) {
+        sessionsByChannel.forEach((channelId, sessions) -> {
+            for (OutboundSession session : sessions) {
+                action.accept(channelId, session);
+            }
+        });
+    }
+
+    // Nombre de canaux ayant au moins une session.
+    public int getChannelCount() {
+        return sessionsByChannel.size();
+    }
+}
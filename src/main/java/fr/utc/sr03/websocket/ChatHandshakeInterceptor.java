@@ -0,0 +1,111 @@
+package fr.utc.sr03.websocket;
+
+import fr.utc.sr03.services.AccessTokenService;
+import fr.utc.sr03.services.MembershipIndex;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+// Analyse et autorise une connexion WebSocket avant l'upgrade, une seule fois par session :
+// - pour "/message/{channelId}", le canal est lu dans le chemin (400 s'il est absent ou invalide) ;
+// - l'utilisateur vient du jeton d'accès "?token=..." (401 s'il est invalide ou expiré), ou à défaut du paramètre
+//   "?userId=..." lorsque les jetons ne sont pas obligatoires (401 si un jeton est exigé, 400 si l'ID est invalide) ;
+// - l'utilisateur doit être membre du canal (403 sinon), d'après l'index des membres en mémoire.
+// Pour une connexion multiplexée ("/messages"), seul l'utilisateur est identifié : l'appartenance est vérifiée
+// à chaque abonnement.
+// Le résultat est stocké dans la session sous la forme d'un ChatSessionContext immuable.
+public class ChatHandshakeInterceptor implements HandshakeInterceptor {
+
+    private final AccessTokenService accessTokenService;
+
+    private final MembershipIndex membershipIndex;
+
+    private final boolean requireToken;
+
+    // Vrai pour l'endpoint multiplexé, sans canal dans le chemin.
+    private final boolean multiplexed;
+
+    public ChatHandshakeInterceptor(AccessTokenService accessTokenService, MembershipIndex membershipIndex,
+                                    boolean requireToken, boolean multiplexed) {
+        this.accessTokenService = accessTokenService;
+        this.membershipIndex = membershipIndex;
+        this.requireToken = requireToken;
+        this.multiplexed = multiplexed;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        int channelId = multiplexed ? 0 : parseId(lastSegment(request.getURI().getPath()));
+        if (channelId < 0) {
+            return reject(response, HttpStatus.BAD_REQUEST);
+        }
+
+        MultiValueMap<String, String> params = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams();
+        String token = params.getFirst("token");
+
+        int userId;
+        if (token != null && !token.isEmpty()) {
+            AccessTokenService.TokenClaims claims = accessTokenService.verify(token);
+            if (claims == null) {
+                return reject(response, HttpStatus.UNAUTHORIZED);
+            }
+            userId = claims.userId();
+        } else if (requireToken) {
+            return reject(response, HttpStatus.UNAUTHORIZED);
+        } else {
+            userId = parseId(params.getFirst("userId"));
+            if (userId < 0) {
+                return reject(response, HttpStatus.BAD_REQUEST);
+            }
+        }
+
+        if (multiplexed) {
+            attributes.put(ChatSessionContext.ATTRIBUTE, ChatSessionContext.multiplexed(userId));
+            return true;
+        }
+
+        if (!membershipIndex.isMember(channelId, userId)) {
+            return reject(response, HttpStatus.FORBIDDEN);
+        }
+
+        attributes.put(ChatSessionContext.ATTRIBUTE, ChatSessionContext.forChannel(channelId, userId));
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    // Méthodes privées :
+
+    private static boolean reject(ServerHttpResponse response, HttpStatus status) {
+        response.setStatusCode(status);
+        return false;
+    }
+
+    private static String lastSegment(String path) {
+        if (path == null) return null;
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    // Lit un identifiant positif (chiffres uniquement, sans exception), ou retourne -1 s'il est invalide.
+    private static int parseId(String value) {
+        if (value == null || value.isEmpty() || value.length() > 9) return -1;
+
+        int id = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+}
@@ -0,0 +1,29 @@
+package fr.utc.sr03.websocket;
+
+import org.springframework.web.socket.WebSocketSession;
+
+// Contexte d'une session WebSocket de discussion, établi une seule fois lors du handshake
+// (utilisateur identifié, et pour une connexion à un seul canal : canal extrait de l'URL et appartenance vérifiée).
+// Il est immuable : les événements suivants de la session le lisent sans aucune analyse de l'URL.
+// Une connexion multiplexée ("/messages") n'est liée à aucun canal à l'ouverture ('channelId' vaut 0) :
+// elle s'abonne ensuite aux canaux par des trames de contrôle.
+public record ChatSessionContext(int channelId, int userId, boolean multiplexed) {
+
+    // Clé de l'attribut de session qui contient le contexte.
+    public static final String ATTRIBUTE = ChatSessionContext.class.getName();
+
+    // Contexte d'une connexion à un seul canal ("/message/{channelId}").
+    public static ChatSessionContext forChannel(int channelId, int userId) {
+        return new ChatSessionContext(channelId, userId, false);
+    }
+
+    // Contexte d'une connexion multiplexée ("/messages").
+    public static ChatSessionContext multiplexed(int userId) {
+        return new ChatSessionContext(0, userId, true);
+    }
+
+    // Contexte d'une session, ou 'null' si elle n'est pas passée par ChatHandshakeInterceptor.
+    public static ChatSessionContext of(WebSocketSession session) {
+        return (ChatSessionContext) session.getAttributes().get(ATTRIBUTE);
+    }
+}
@@ -0,0 +1,143 @@
+package fr.utc.sr03.websocket;
+
+import fr.utc.sr03.model.Channel;
+import fr.utc.sr03.model.Member;
+import fr.utc.sr03.model.User;
+import fr.utc.sr03.services.ChannelsDeletedEvent;
+import fr.utc.sr03.services.MembershipIndex;
+import fr.utc.sr03.services.MembershipsChangedEvent;
+import fr.utc.sr03.services.UserSearchIndex;
+import fr.utc.sr03.services.UsersChangedEvent;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+
+// Synchronisation des index en mémoire (membres des canaux, recherche d'utilisateurs) et du cache de second niveau
+// d'Hibernate (propre à chaque noeud) entre les noeuds.
+// Les modifications validées sur ce noeud (événements publiés par ServicesRequest)
+// sont transmises aux autres noeuds par le ChannelMessageBus, sous la forme "type:id1,id2,...".
+// Un noeud qui reçoit un événement retire de son cache les entités concernées, puis relit les lignes en BDD
+// plutôt que d'appliquer une modification : le résultat ne dépend ni de l'ordre d'arrivée des événements,
+// ni d'un événement reçu deux fois.
+@Component
+public class ClusterSync implements ClusterSyncListener {
+
+    // Nombre maximal d'identifiants par événement (une notification Postgres est limitée à 8000 octets).
+    private static final int MAX_IDS_PER_EVENT = 500;
+
+    private static final String MEMBERSHIPS = "members";
+    private static final String USERS = "users";
+    private static final String CHANNELS_DELETED = "channels-deleted";
+
+    private final ChannelMessageBus bus;
+    private final MembershipIndex membershipIndex;
+    private final UserSearchIndex userSearchIndex;
+    private final DynamicWebSocketHandler handler;
+
+    // Cache de second niveau de ce noeud.
+    private final Cache cache;
+
+    public ClusterSync(ChannelMessageBus bus, MembershipIndex membershipIndex, UserSearchIndex userSearchIndex,
+                       DynamicWebSocketHandler handler, EntityManagerFactory emf) {
+        this.bus = bus;
+        this.membershipIndex = membershipIndex;
+        this.userSearchIndex = userSearchIndex;
+        this.handler = handler;
+        this.cache = emf.getCache();
+        bus.setSyncListener(this);
+    }
+
+    // Modifications validées sur ce noeud : les autres noeuds sont prévenus.
+
+    @EventListener
+    public void onMembershipsChanged(MembershipsChangedEvent event) {
+        publish(MEMBERSHIPS, event.getChannelIds());
+    }
+
+    @EventListener
+    public void onUsersChanged(UsersChangedEvent event) {
+        publish(USERS, event.getUserIds());
+    }
+
+    @EventListener
+    public void onChannelsDeleted(ChannelsDeletedEvent event) {
+        publish(CHANNELS_DELETED, event.getChannelIds());
+    }
+
+    // Événement publié par un autre noeud.
+    @Override
+    public void onSyncEvent(String event) {
+        int separator = event.indexOf(':');
+        if (separator < 0) return;
+
+        List<Integer> ids = new ArrayList<>();
+        try {
+            for (String id : event.substring(separator + 1).split(",")) {
+                ids.add(Integer.parseInt(id));
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Événement de synchronisation ignoré : " + event);
+            return;
+        }
+
+        switch (event.substring(0, separator)) {
+            case MEMBERSHIPS -> {
+                // Les adhésions sont en cache par ID d'adhésion, inconnu ici : la région est vidée.
+                cache.evict(Member.class);
+                forEach(ids, membershipIndex::reloadChannel);
+            }
+            case USERS -> forEach(ids, userId -> {
+                cache.evict(User.class, userId);
+                userSearchIndex.reload(userId);
+                membershipIndex.reloadUser(userId);
+            });
+            case CHANNELS_DELETED -> {
+                ids.forEach(channelId -> cache.evict(Channel.class, channelId));
+                cache.evict(Member.class);
+                ids.forEach(membershipIndex::removeChannel);
+                // Les sessions de ce noeud sur ces canaux sont fermées comme pour une suppression locale.
+                handler.onChannelsDeleted(new ChannelsDeletedEvent(ids));
+            }
+            default -> System.err.println("Événement de synchronisation inconnu : " + event);
+        }
+    }
+
+    // Des événements ont pu être perdus : le cache est vidé et les index sont entièrement rechargés.
+    @Override
+    public void onResync() {
+        cache.evictAll();
+        try {
+            membershipIndex.reloadAll();
+            userSearchIndex.reloadAll();
+        } catch (RuntimeException e) {
+            System.err.println("Échec du rechargement des index : " + e.getMessage());
+        }
+    }
+
+    // Méthodes privées :
+
+    // Publie un événement par tranche d'identifiants.
+    private void publish(String type, List<Integer> ids) {
+        for (int from = 0; from < ids.size(); from += MAX_IDS_PER_EVENT) {
+            List<Integer> slice = ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_EVENT));
+            bus.publishSync(type + ":" + slice.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        }
+    }
+
+    // Recharge chaque identifiant ; un échec (BDD indisponible) n'empêche pas de traiter les suivants.
+    private static void forEach(List<Integer> ids, IntConsumer reload) {
+        for (Integer id : ids) {
+            try {
+                reload.accept(id);
+            } catch (RuntimeException e) {
+                System.err.println("Échec de la synchronisation de " + id + " : " + e.getMessage());
+            }
+        }
+    }
+}
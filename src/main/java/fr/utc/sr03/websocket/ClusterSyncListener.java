@@ -0,0 +1,11 @@
+package fr.utc.sr03.websocket;
+
+// Destinataire des événements de synchronisation publiés par les autres noeuds sur le ChannelMessageBus.
+public interface ClusterSyncListener {
+
+    // Appelé lorsqu'un autre noeud a publié un événement (voir ClusterSync).
+    void onSyncEvent(String event);
+
+    // Appelé lorsque des événements ont pu être perdus (reconnexion au bus) : tout l'état partagé doit être rechargé.
+    void onResync();
+}
@@ -1,147 +1,393 @@
 package fr.utc.sr03.websocket;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import fr.utc.sr03.services.ServicesRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import fr.utc.sr03.services.ChannelsDeletedEvent;
+import fr.utc.sr03.services.MembershipIndex;
+import fr.utc.sr03.services.MessageHistoryWriter;
+import org.springframework.context.event.EventListener;
 import org.springframework.web.socket.*;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
 import java.io.IOException;
-import java.net.URI;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 // Handler WebSocket dynamique pour la gestion des salons de discussion (channels).
 // Permet de gérer des connexions WebSocket sur des salons créés dynamiquement.
-public class DynamicWebSocketHandler extends TextWebSocketHandler {
+// Les messages sont aussi échangés avec les autres instances de l'application via le ChannelMessageBus.
+// Deux types de connexions partagent le même registre : une connexion par canal ("/message/{channelId}"),
+// et des connexions multiplexées ("/messages") abonnées à plusieurs canaux par des trames de contrôle (MultiplexProtocol).
+// Chaque session échange ses trames en JSON (texte) ou en CBOR (binaire), selon le sous-protocole négocié (WireFormat).
+public class DynamicWebSocketHandler extends AbstractWebSocketHandler
+        implements ChannelMessageListener, SubProtocolCapable {
 
-    // Service d'accès à la base de données (membres, canaux, etc.).
-    private final ServicesRequest servicesRequest;
+    // Sous-protocoles proposés lors du handshake (un client qui n'en demande aucun échange en JSON).
+    private static final List<String> SUB_PROTOCOLS =
+            Arrays.stream(WireFormat.values()).map(WireFormat::getProtocol).toList();
 
-    // Map des sessions actives, classées par ID de canal.
-    private final Map<Integer, List<WebSocketSession>> sessionsByChannel = new ConcurrentHashMap<>();
+    // Index en mémoire des membres, pour ne pas interroger la BDD à chaque diffusion.
+    private final MembershipIndex membershipIndex;
 
-    // Utilisé pour sérialiser/désérialiser les messages JSON.
-    private final ObjectMapper mapper = new ObjectMapper();
+    // Historisation asynchrone des messages (écriture par lots en BDD).
+    private final MessageHistoryWriter historyWriter;
 
-    // Constructeur avec injection du service.
-    public DynamicWebSocketHandler(ServicesRequest servicesRequest) {
-        this.servicesRequest = servicesRequest;
+    // Bus de diffusion des messages vers les autres instances de l'application.
+    private final ChannelMessageBus bus;
+
+    // Registre des sessions actives (avec leur file d'envoi), classées par ID de canal.
+    // Le handler s'abonne au bus pour un canal à sa première session locale et s'en désabonne à la dernière.
+    private final ChannelSessionRegistry registry;
+
+    // Nombre de formats de trame (taille des tableaux de trames construites à chaque diffusion).
+    private static final int WIRE_FORMATS = WireFormat.values().length;
+
+    // Clé de l'attribut de session qui contient sa file d'envoi.
+    private static final String OUTBOUND_ATTRIBUTE = "outbound";
+
+    // Pool de threads qui vide les files d'envoi des sessions.
+    private final ExecutorService senderPool;
+
+    // Taille maximale de la file d'envoi de chaque session.
+    private final int queueCapacity;
+
+    // Politique appliquée lorsqu'une file d'envoi est pleine.
+    private final OutboundSession.OverflowPolicy overflowPolicy;
+
+    // Nombre maximal de canaux suivis par une même connexion multiplexée.
+    private final int maxChannelsPerConnection;
+
+    // Regroupement des messages des canaux très actifs en une trame par fenêtre de quelques millisecondes.
+    private final ChannelBatcher batcher;
+
+    // Sessions fermées après un échec d'envoi, et après un envoi bloqué au-delà du délai (supervision).
+    private final AtomicLong sendErrors = new AtomicLong();
+    private final AtomicLong sendTimeouts = new AtomicLong();
+
+    // Constructeur avec injection des services.
+    public DynamicWebSocketHandler(MembershipIndex membershipIndex, MessageHistoryWriter historyWriter,
+                                   ChannelMessageBus bus, ExecutorService senderPool, int queueCapacity,
+                                   OutboundSession.OverflowPolicy overflowPolicy, int maxChannelsPerConnection,
+                                   ChannelBatcher batcher) {
+        this.membershipIndex = membershipIndex;
+        this.historyWriter = historyWriter;
+        this.bus = bus;
+        this.registry = new ChannelSessionRegistry(
+                channelId -> bus.subscribe(channelId, this),
+                channelId -> {
+                    bus.unsubscribe(channelId, this);
+                    batcher.forget(channelId);
+                });
+        this.senderPool = senderPool;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.maxChannelsPerConnection = maxChannelsPerConnection;
+        this.batcher = batcher;
     }
 
     // Lorsqu'une nouvelle connexion WebSocket est établie.
+    // Le canal et l'utilisateur ont déjà été lus et autorisés au handshake (ChatHandshakeInterceptor).
+    // Une connexion multiplexée n'est abonnée à aucun canal tant qu'elle ne l'a pas demandé.
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        Integer channelId = extractChannelId(session.getUri());
-        Integer userId = extractUserId(session.getUri());
-
-        // Si les infos sont manquantes, on ferme la session.
-        if (channelId == null || userId == null) {
+        ChatSessionContext context = ChatSessionContext.of(session);
+        if (context == null) {
             session.close(CloseStatus.BAD_DATA);
             return;
         }
 
-        // On stocke les infos dans les attributs de la session.
-        session.getAttributes().put("channelId", channelId);
-        session.getAttributes().put("userId", userId);
+        // On crée la file d'envoi de la session, puis on l'ajoute à la liste des sessions du canal.
+        OutboundSession outbound = new OutboundSession(session, context, queueCapacity, overflowPolicy, senderPool);
+        session.getAttributes().put(OUTBOUND_ATTRIBUTE, outbound);
 
-        // On ajoute la session à la liste des sessions du canal.
-        sessionsByChannel
-                .computeIfAbsent(channelId, id -> Collections.synchronizedList(new ArrayList<>()))
-                .add(session);
+        if (!context.multiplexed()) {
+            subscribe(outbound, context.channelId());
+        }
+    }
+
+    @Override
+    public List<String> getSubProtocols() {
+        return SUB_PROTOCOLS;
     }
 
-    // Lorsqu'un message est reçu depuis une session WebSocket.
+    // Lorsqu'un message texte (JSON) est reçu depuis une session WebSocket.
     @Override
     public void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
-        Integer channelId = extractChannelId(session.getUri());
-        if (channelId == null) return;
+        handlePayload(session, message.getPayload());
+    }
 
-        // On parse le message en objet Java
-        MessageSocket msg = mapper.readValue(message.getPayload(), MessageSocket.class);
+    // Lorsqu'un message binaire (CBOR) est reçu : il est converti en JSON puis traité comme un message texte.
+    @Override
+    public void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws IOException {
+        String payload;
+        try {
+            payload = WireFormat.decodeCbor(message.getPayload());
+        } catch (IOException e) {
+            session.close(CloseStatus.BAD_DATA);
+            return;
+        }
+        handlePayload(session, payload);
+    }
 
-        // On le renvoie aux autres utilisateurs du même canal
-        String json = mapper.writeValueAsString(msg);
-        broadcastToChannel(channelId, json);
+    // Lorsqu'un message publié par une autre instance arrive par le bus.
+    @Override
+    public void onChannelMessage(int channelId, String payload) {
+        batcher.submit(channelId, payload, this::broadcastToChannel);
     }
 
     // Lorsqu'une session se ferme.
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
-        Integer channelId = extractChannelId(session.getUri());
-        if (channelId != null) {
-            List<WebSocketSession> sessions = sessionsByChannel.get(channelId);
-            if (sessions != null) {
-                sessions.remove(session);
+        OutboundSession outbound = outboundOf(session);
+        if (outbound != null) {
+            if (outbound.getFailure() == OutboundSession.SendFailure.ERROR) sendErrors.incrementAndGet();
+            if (outbound.getFailure() == OutboundSession.SendFailure.TIMEOUT) sendTimeouts.incrementAndGet();
+
+            // Une connexion multiplexée est retirée de tous les canaux auxquels elle était abonnée.
+            for (Integer channelId : List.copyOf(outbound.getChannels())) {
+                unsubscribe(outbound, channelId);
             }
         }
     }
 
-    // Diffuse un message à toutes les sessions d'un canal, uniquement aux membres valides.
-    private void broadcastToChannel(int channelId, String jsonMessage) throws IOException {
-        List<WebSocketSession> sessions = sessionsByChannel.get(channelId);
-        if (sessions != null) {
-            List<WebSocketSession> toRemove = new ArrayList<>();
-
-            for (WebSocketSession s : sessions) {
-                if (!s.isOpen()) {
-                    toRemove.add(s);
-                    continue;
-                }
+    // Lorsque des canaux sont supprimés (expiration ou suppression manuelle) : les sessions locales de ces canaux
+    // sont fermées, et les connexions multiplexées en sont désabonnées.
+    @EventListener
+    public void onChannelsDeleted(ChannelsDeletedEvent event) {
+        for (Integer channelId : event.getChannelIds()) {
+            for (OutboundSession outbound : registry.getSessions(channelId)) {
+                dropSubscription(channelId, outbound);
+            }
+        }
+    }
 
-                Integer sessionUserId = (Integer) s.getAttributes().get("userId");
-                Integer sessionChannelId = (Integer) s.getAttributes().get("channelId");
+    // Ferme les sessions dont l'envoi en cours dure depuis plus de 'sendTimeLimitMs' (client qui ne lit plus) :
+    // l'envoi bloqué échoue et libère son thread du pool d'envoi. Appelée périodiquement (voir WebSocketConfig).
+    public void closeStalledSessions(long sendTimeLimitMs) {
+        long now = System.nanoTime();
+        long limitNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeLimitMs);
+        registry.forEach((channelId, outbound) -> outbound.closeIfStalled(now, limitNanos));
+    }
 
-                // Vérifie que la session est bien liée au bon canal.
-                if (sessionUserId == null || sessionChannelId == null || !sessionChannelId.equals(channelId)) {
-                    toRemove.add(s);
-                    continue;
-                }
+    // Retourne l'état des files d'envoi (profondeur et messages perdus) pour la supervision.
+    public Map<String, Object> getOutboundStats() {
+        List<Map<String, Object>> details = new ArrayList<>();
+        // Totaux (messages en attente, messages perdus), cumulés pendant le parcours.
+        long[] totals = new long[2];
 
-                // Vérifie si l'utilisateur est encore membre du canal.
-                boolean stillMember = servicesRequest.isUserInChannel(sessionUserId, channelId);
-                if (stillMember) {
-                    s.sendMessage(new TextMessage(jsonMessage));
-                } else {
-                    s.close(CloseStatus.NORMAL);
-                    toRemove.add(s);
-                }
+        // Une connexion multiplexée apparaît dans plusieurs canaux du registre : on ne la compte qu'une fois.
+        Set<OutboundSession> seen = new HashSet<>();
+        registry.forEach((channelId, outbound) -> {
+            if (!seen.add(outbound)) return;
+
+            Map<String, Object> detail = new LinkedHashMap<>();
+            detail.put("sessionId", outbound.getSession().getId());
+            detail.put("channelIds", List.copyOf(outbound.getChannels()));
+            detail.put("multiplexed", outbound.getContext().multiplexed());
+            detail.put("wireFormat", outbound.getWireFormat());
+            detail.put("userId", outbound.getContext().userId());
+            detail.put("queueDepth", outbound.getQueueDepth());
+            detail.put("dropped", outbound.getDroppedCount());
+            details.add(detail);
+
+            totals[0] += outbound.getQueueDepth();
+            totals[1] += outbound.getDroppedCount();
+        });
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("overflowPolicy", overflowPolicy);
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("channels", registry.getChannelCount());
+        stats.put("sessions", details.size());
+        stats.put("queued", totals[0]);
+        stats.put("dropped", totals[1]);
+        stats.put("sendErrors", sendErrors.get());
+        stats.put("sendTimeouts", sendTimeouts.get());
+        stats.put("batching", batcher.getStats());
+        stats.put("details", details);
+        return stats;
+    }
+
+    // Méthodes privées :
+
+    // Diffuse un message à toutes les sessions d'un canal, uniquement aux membres valides.
+    // Les messages sont seulement déposés dans les files d'envoi : aucun envoi réseau n'a lieu sur ce thread.
+    // La trame (un message, ou un tableau de messages regroupés par le ChannelBatcher) est construite une seule fois
+    // et partagée par toutes les sessions du canal ; la trame étiquetée avec l'ID du canal n'est construite
+    // que s'il y a une connexion multiplexée, et une seule fois. De même, chaque trame n'est encodée en CBOR
+    // qu'une fois, et seulement si une session de ce format la reçoit.
+    private void broadcastToChannel(int channelId, String payload) {
+        // Trames déjà construites, par type de connexion (un canal / multiplexée) et par format.
+        WebSocketMessage<?>[] frames = new WebSocketMessage<?>[2 * WIRE_FORMATS];
+
+        // Le parcours se fait sur une vue concurrente du registre : les connexions et déconnexions
+        // simultanées ne bloquent pas la diffusion.
+        for (OutboundSession outbound : registry.getSessions(channelId)) {
+            WebSocketSession s = outbound.getSession();
+            if (!s.isOpen()) {
+                unsubscribe(outbound, channelId);
+                continue;
+            }
+
+            // Vérifie si l'utilisateur est encore membre du canal.
+            boolean stillMember = membershipIndex.isMember(channelId, outbound.getContext().userId());
+            if (!stillMember) {
+                dropSubscription(channelId, outbound);
+                continue;
             }
 
-            // On nettoie les sessions invalides.
-            sessions.removeAll(toRemove);
+            boolean multiplexed = outbound.getContext().multiplexed();
+            WireFormat format = outbound.getWireFormat();
+            int slot = (multiplexed ? WIRE_FORMATS : 0) + format.ordinal();
+            if (frames[slot] == null) {
+                frames[slot] = format.encode(multiplexed ? MultiplexProtocol.message(channelId, payload) : payload);
+            }
+            outbound.enqueue(frames[slot]);
         }
     }
 
-    // Extrait le channelId depuis l'URI WebSocket.
-    private Integer extractChannelId(URI uri) {
-        if (uri == null) return null;
+    // Traite un message reçu (texte JSON), quel que soit le format de la trame.
+    private void handlePayload(WebSocketSession session, String payload) throws IOException {
+        ChatSessionContext context = ChatSessionContext.of(session);
+        if (context == null) return;
+
+        if (context.multiplexed()) {
+            handleMultiplexedFrame(session, context, payload);
+            return;
+        }
 
+        // On valide le message en un seul passage, sans le désérialiser puis le resérialiser.
+        MessageSocket msg;
         try {
-            String path = uri.getPath();
-            String[] segments = path.split("/");
-            return Integer.parseInt(segments[segments.length - 1]);
-        } catch (Exception e) {
-            System.err.println("Impossible d'extraire le channelId depuis l'URL: " + uri);
-            return null;
+            msg = MessageSocketParser.parse(payload);
+        } catch (MessageSocketParser.MessageTooLargeException e) {
+            session.close(CloseStatus.TOO_BIG_TO_PROCESS);
+            return;
+        } catch (JsonProcessingException e) {
+            session.close(CloseStatus.BAD_DATA);
+            return;
         }
+
+        // Le message est diffusé tel quel : il doit donc déjà porter l'identité de l'utilisateur authentifié.
+        if (!isFromSessionUser(msg, context)) {
+            session.close(CloseStatus.POLICY_VIOLATION);
+            return;
+        }
+
+        // Le message reçu est diffusé tel quel, sans être resérialisé.
+        publishMessage(context.channelId(), context.userId(), msg, payload);
     }
 
-    // Extrait le userId depuis les paramètres de requête WebSocket.
-    private Integer extractUserId(URI uri) {
-        if (uri == null || uri.getQuery() == null) return null;
+    private static OutboundSession outboundOf(WebSocketSession session) {
+        return (OutboundSession) session.getAttributes().get(OUTBOUND_ATTRIBUTE);
+    }
+
+    // Traite une trame reçue sur une connexion multiplexée (abonnement, désabonnement ou message d'un canal).
+    private void handleMultiplexedFrame(WebSocketSession session, ChatSessionContext context, String payload)
+            throws IOException {
+        OutboundSession outbound = outboundOf(session);
+        if (outbound == null) return;
 
+        MultiplexProtocol.Frame frame;
         try {
-            String[] params = uri.getQuery().split("&");
-            for (String param : params) {
-                String[] pair = param.split("=");
-                if (pair.length == 2 && pair[0].equals("userId")) {
-                    return Integer.parseInt(pair[1]);
+            frame = MultiplexProtocol.parse(payload);
+        } catch (JsonProcessingException e) {
+            session.close(CloseStatus.BAD_DATA);
+            return;
+        }
+        int channelId = frame.channelId();
+
+        switch (frame.type()) {
+            case SUBSCRIBE -> {
+                // L'appartenance est vérifiée à chaque abonnement, d'après l'index des membres en mémoire.
+                if (!membershipIndex.isMember(channelId, context.userId())) {
+                    sendControl(outbound, MultiplexProtocol.error(channelId, "forbidden"));
+                } else if (!outbound.isSubscribed(channelId)
+                        && outbound.getChannels().size() >= maxChannelsPerConnection) {
+                    sendControl(outbound, MultiplexProtocol.error(channelId, "too-many-channels"));
+                } else {
+                    subscribe(outbound, channelId);
+                    sendControl(outbound, MultiplexProtocol.subscribed(channelId));
                 }
             }
-        } catch (Exception e) {
-            System.err.println("Impossible d'extraire le userId depuis l'URL: " + uri);
+            case UNSUBSCRIBE -> {
+                unsubscribe(outbound, channelId);
+                sendControl(outbound, MultiplexProtocol.unsubscribed(channelId));
+            }
+            case MESSAGE -> {
+                if (!outbound.isSubscribed(channelId)) {
+                    sendControl(outbound, MultiplexProtocol.error(channelId, "not-subscribed"));
+                    return;
+                }
+
+                MessageSocket msg;
+                try {
+                    msg = MessageSocketParser.parse(frame.data());
+                } catch (MessageSocketParser.MessageTooLargeException e) {
+                    sendControl(outbound, MultiplexProtocol.error(channelId, "too-large"));
+                    return;
+                } catch (JsonProcessingException e) {
+                    session.close(CloseStatus.BAD_DATA);
+                    return;
+                }
+
+                if (!isFromSessionUser(msg, context)) {
+                    sendControl(outbound, MultiplexProtocol.error(channelId, "user-mismatch"));
+                    return;
+                }
+
+                // Le contenu de 'data' est exactement la trame qu'aurait envoyée une connexion à un seul canal.
+                publishMessage(channelId, context.userId(), msg, frame.data());
+            }
         }
+    }
 
-        return null;
+    // Vrai si le champ userID du message est l'utilisateur de la session (vérifié au handshake).
+    // Un message sans userID, ou au nom d'un autre utilisateur, n'est pas diffusé.
+    private static boolean isFromSessionUser(MessageSocket msg, ChatSessionContext context) {
+        return msg.getUserID() != null && msg.getUserID() == context.userId();
+    }
+
+    // Historise, diffuse localement et publie sur le bus un message valide reçu d'un client.
+    private void publishMessage(int channelId, int userId, MessageSocket msg, String payload) {
+        // On confie le message à l'historique, qui l'écrira plus tard par lots (sans attendre la BDD).
+        if (msg.getMessage() != null) {
+            historyWriter.enqueue(channelId, userId, msg.getMessage());
+        }
+
+        batcher.submit(channelId, payload, this::broadcastToChannel);
+
+        // Les sessions connectées aux autres instances le reçoivent via le bus.
+        bus.publish(channelId, payload, this);
+    }
+
+    // Envoie une trame de contrôle d'une connexion multiplexée, dans le format de la session.
+    private static void sendControl(OutboundSession outbound, String json) {
+        outbound.enqueue(outbound.getWireFormat().encode(json));
+    }
+
+    private void subscribe(OutboundSession outbound, int channelId) {
+        if (outbound.subscribe(channelId)) {
+            registry.add(channelId, outbound);
+        }
+    }
+
+    private void unsubscribe(OutboundSession outbound, int channelId) {
+        if (outbound.unsubscribe(channelId)) {
+            registry.remove(channelId, outbound);
+        }
+    }
+
+    // Retire une session d'un canal qu'elle ne peut plus suivre (canal supprimé ou utilisateur retiré) :
+    // une connexion à un seul canal est fermée, une connexion multiplexée est seulement désabonnée et prévenue.
+    private void dropSubscription(int channelId, OutboundSession outbound) {
+        if (outbound.getContext().multiplexed()) {
+            unsubscribe(outbound, channelId);
+            sendControl(outbound, MultiplexProtocol.unsubscribed(channelId));
+        } else {
+            outbound.close(CloseStatus.NORMAL);
+            unsubscribe(outbound, channelId);
+        }
     }
 }
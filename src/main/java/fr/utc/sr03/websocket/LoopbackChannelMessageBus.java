@@ -0,0 +1,55 @@
+package fr.utc.sr03.websocket;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Implémentation du bus limitée à la JVM courante : les messages sont remis directement aux autres handlers
+// abonnés. C'est l'implémentation par défaut (une seule instance), qui permet aussi de faire fonctionner
+// plusieurs handlers dans la même JVM comme s'il s'agissait de noeuds distincts.
+// Il n'y a pas d'autre noeud à synchroniser : ces handlers partagent les mêmes index en mémoire.
+@Component
+@ConditionalOnProperty(name = "chat.bus.type", havingValue = "loopback", matchIfMissing = true)
+public class LoopbackChannelMessageBus implements ChannelMessageBus {
+
+    // Handlers abonnés, par ID de canal.
+    private final Map<Integer, Set<ChannelMessageListener>> listenersByChannel = new ConcurrentHashMap<>();
+
+    @Override
+    public void subscribe(int channelId, ChannelMessageListener listener) {
+        listenersByChannel.computeIfAbsent(channelId, id -> ConcurrentHashMap.newKeySet()).add(listener);
+    }
+
+    @Override
+    public void unsubscribe(int channelId, ChannelMessageListener listener) {
+        listenersByChannel.computeIfPresent(channelId, (id, listeners) -> {
+            listeners.remove(listener);
+            return listeners.isEmpty() ? null : listeners;
+        });
+    }
+
+    @Override
+    public void publish(int channelId, String payload, ChannelMessageListener origin) {
+        Set<ChannelMessageListener> listeners = listenersByChannel.get(channelId);
+        if (listeners == null) return;
+
+        for (ChannelMessageListener listener : listeners) {
+            if (listener != origin) {
+                listener.onChannelMessage(channelId, payload);
+            }
+        }
+    }
+
+    @Override
+    public void publishSync(String event) {
+        // Aucun autre noeud.
+    }
+
+    @Override
+    public void setSyncListener(ClusterSyncListener listener) {
+        // Aucun événement ne sera reçu.
+    }
+}
@@ -0,0 +1,88 @@
+package fr.utc.sr03.websocket;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+// Valide et lit un message WebSocket en un seul passage avec le parseur JSON "streaming" de Jackson.
+// Le message est accepté tel quel s'il a la forme {"userID": <entier>, "message": <texte>}, ce qui évite de
+// construire l'arbre JSON puis de le resérialiser avant la diffusion.
+// Un message diffusé est transmis tel quel aux autres noeuds (PostgresChannelMessageBus, par NOTIFY, limité
+// à 8000 octets) : un message plus long que MAX_PAYLOAD_BYTES est refusé, pour être reçu sur tous les noeuds ou aucun.
+public final class MessageSocketParser {
+
+    // Taille maximale (octets UTF-8) d'un message : limite d'une notification Postgres, moins l'en-tête du bus.
+    public static final int MAX_PAYLOAD_BYTES = 7800;
+
+    // Fabrique de parseurs partagée (thread-safe).
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    // Message refusé car plus long que MAX_PAYLOAD_BYTES.
+    public static class MessageTooLargeException extends JsonProcessingException {
+        public MessageTooLargeException(int bytes) {
+            super("Message trop volumineux : " + bytes + " octets (maximum " + MAX_PAYLOAD_BYTES + ").");
+        }
+    }
+
+    private MessageSocketParser() {}
+
+    // Lit le contenu d'un message. Lève une MessageTooLargeException s'il dépasse MAX_PAYLOAD_BYTES,
+    // et une JsonParseException s'il n'est pas au format attendu.
+    public static MessageSocket parse(String payload) throws IOException {
+        // Un caractère occupe de 1 à 3 octets en UTF-8 (4 pour une paire de substitution, soit 2 par char) :
+        // l'encodage n'est calculé que si la longueur en caractères ne suffit pas à conclure.
+        if (payload.length() > MAX_PAYLOAD_BYTES
+                || (payload.length() * 3 > MAX_PAYLOAD_BYTES && utf8Length(payload) > MAX_PAYLOAD_BYTES)) {
+            throw new MessageTooLargeException(utf8Length(payload));
+        }
+
+        try (JsonParser parser = FACTORY.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Un objet JSON est attendu.");
+            }
+
+            MessageSocket msg = new MessageSocket();
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+
+                switch (field) {
+                    case "userID" -> {
+                        if (value == JsonToken.VALUE_NUMBER_INT) {
+                            msg.setUserID(parser.getIntValue());
+                        } else if (value != JsonToken.VALUE_NULL) {
+                            throw new JsonParseException(parser, "userID doit être un entier.");
+                        }
+                    }
+                    case "message" -> {
+                        if (value == JsonToken.VALUE_STRING) {
+                            msg.setMessage(parser.getText());
+                        } else if (value != JsonToken.VALUE_NULL) {
+                            throw new JsonParseException(parser, "message doit être une chaîne.");
+                        }
+                    }
+                    default -> throw new JsonParseException(parser, "Champ inconnu : " + field);
+                }
+            }
+
+            // L'objet doit être fermé et rien ne doit le suivre.
+            if (parser.currentToken() != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                throw new JsonParseException(parser, "Message JSON mal formé.");
+            }
+
+            return msg;
+        }
+    }
+
+    // Méthodes privées :
+
+    private static int utf8Length(String text) {
+        return text.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
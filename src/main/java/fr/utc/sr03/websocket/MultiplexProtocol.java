@@ -0,0 +1,117 @@
+package fr.utc.sr03.websocket;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+// Trames échangées sur une connexion multiplexée ("/messages"), où une seule connexion sert plusieurs canaux.
+// Client -> serveur :
+//   {"type": "subscribe", "channelId": 12}
+//   {"type": "unsubscribe", "channelId": 12}
+//   {"type": "message", "channelId": 12, "data": {"userID": 5, "message": "..."}}
+// Serveur -> client :
+//   {"type": "message", "channelId": 12, "data": {...}}   (message du canal, 'data' tel qu'envoyé par l'émetteur,
+//                                                          ou tableau de messages si le canal est regroupé)
+//   {"type": "subscribed" | "unsubscribed", "channelId": 12}
+//   {"type": "error", "channelId": 12, "reason": "..."}
+// L'objet 'data' n'est jamais désérialisé puis resérialisé : il est recopié tel quel dans les trames diffusées.
+// Son champ 'userID' doit donc être l'utilisateur de la connexion, sinon la trame est refusée ("user-mismatch").
+// Il ne doit pas dépasser MessageSocketParser.MAX_PAYLOAD_BYTES, sinon la trame est refusée ("too-large").
+public final class MultiplexProtocol {
+
+    // Types de trames envoyées par le client.
+    public enum Type { SUBSCRIBE, UNSUBSCRIBE, MESSAGE }
+
+    // Trame reçue d'un client ; 'data' est le texte JSON du message (null hors trame "message").
+    public record Frame(Type type, int channelId, String data) {}
+
+    // Fabrique de parseurs partagée (thread-safe).
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private MultiplexProtocol() {}
+
+    // Lit une trame client en un seul passage. Lève une JsonParseException si elle n'est pas au format attendu.
+    public static Frame parse(String payload) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Un objet JSON est attendu.");
+            }
+
+            Type type = null;
+            int channelId = -1;
+            String data = null;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+
+                switch (field) {
+                    case "type" -> {
+                        if (value != JsonToken.VALUE_STRING) {
+                            throw new JsonParseException(parser, "type doit être une chaîne.");
+                        }
+                        type = switch (parser.getText()) {
+                            case "subscribe" -> Type.SUBSCRIBE;
+                            case "unsubscribe" -> Type.UNSUBSCRIBE;
+                            case "message" -> Type.MESSAGE;
+                            default -> throw new JsonParseException(parser, "Type de trame inconnu : " + parser.getText());
+                        };
+                    }
+                    case "channelId" -> {
+                        if (value != JsonToken.VALUE_NUMBER_INT || parser.getIntValue() <= 0) {
+                            throw new JsonParseException(parser, "channelId doit être un entier positif.");
+                        }
+                        channelId = parser.getIntValue();
+                    }
+                    case "data" -> {
+                        if (value != JsonToken.START_OBJECT) {
+                            throw new JsonParseException(parser, "data doit être un objet.");
+                        }
+                        // On recopie le texte de l'objet, de son accolade ouvrante à son accolade fermante.
+                        int start = (int) parser.getTokenLocation().getCharOffset();
+                        parser.skipChildren();
+                        int end = (int) parser.getTokenLocation().getCharOffset() + 1;
+                        data = payload.substring(start, end);
+                    }
+                    default -> throw new JsonParseException(parser, "Champ inconnu : " + field);
+                }
+            }
+
+            // L'objet doit être fermé et rien ne doit le suivre.
+            if (parser.currentToken() != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                throw new JsonParseException(parser, "Trame JSON mal formée.");
+            }
+            if (type == null || channelId < 0) {
+                throw new JsonParseException(parser, "type et channelId sont obligatoires.");
+            }
+            if (type == Type.MESSAGE && data == null) {
+                throw new JsonParseException(parser, "data est obligatoire pour un message.");
+            }
+
+            return new Frame(type, channelId, data);
+        }
+    }
+
+    // Trame d'un message diffusé dans un canal ('data' est le message JSON déjà validé, ou un tableau de messages).
+    public static String message(int channelId, String data) {
+        return "{\"type\":\"message\",\"channelId\":" + channelId + ",\"data\":" + data + "}";
+    }
+
+    // Trame de confirmation d'abonnement.
+    public static String subscribed(int channelId) {
+        return "{\"type\":\"subscribed\",\"channelId\":" + channelId + "}";
+    }
+
+    // Trame de fin d'abonnement (demandée par le client, ou canal supprimé ou quitté).
+    public static String unsubscribed(int channelId) {
+        return "{\"type\":\"unsubscribed\",\"channelId\":" + channelId + "}";
+    }
+
+    // Trame d'erreur ('reason' est un code fixe, sans caractère à échapper).
+    public static String error(int channelId, String reason) {
+        return "{\"type\":\"error\",\"channelId\":" + channelId + ",\"reason\":\"" + reason + "\"}";
+    }
+}
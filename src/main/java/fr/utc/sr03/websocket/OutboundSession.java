@@ -0,0 +1,215 @@
+package fr.utc.sr03.websocket;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// File d'envoi bornée associée à une session WebSocket.
+// Les messages sont déposés sans bloquer par le thread qui diffuse, puis envoyés dans l'ordre par une tâche
+// dédiée à la session, exécutée sur le pool d'envoi. Un client lent ne ralentit donc ni l'émetteur ni le reste du canal.
+// Un envoi est bloquant : un client qui ne lit plus occuperait un thread du pool indéfiniment. La date de début
+// de l'envoi en cours est donc relevée, et la session est fermée par closeIfStalled si l'envoi dépasse le délai
+// (la fermeture débloque l'envoi, qui échoue, et libère le thread).
+public class OutboundSession {
+
+    // Comportement lorsque la file de la session est pleine.
+    public enum OverflowPolicy {
+        DROP_OLDEST,  // On retire le plus ancien message en attente.
+        DROP_NEWEST,  // On ignore le nouveau message.
+        DISCONNECT    // On ferme la session du client trop lent.
+    }
+
+    private final WebSocketSession session;
+    private final ChatSessionContext context;
+    private final BlockingQueue<WebSocketMessage<?>> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final Executor senderPool;
+
+    // Format des trames de la session (JSON ou CBOR), négocié lors du handshake.
+    private final WireFormat wireFormat;
+
+    // Vrai tant qu'une tâche d'envoi est planifiée ou en cours pour cette session.
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    // Nombre de messages perdus à cause d'une file pleine.
+    private final AtomicLong dropped = new AtomicLong();
+
+    // Date (System.nanoTime) du début de l'envoi en cours, 0 si aucun envoi n'est en cours.
+    private volatile long sendStartedAt;
+
+    // Cause de la fermeture de la session par le serveur, null tant qu'elle n'a pas échoué.
+    private volatile SendFailure failure;
+
+    // Raison pour laquelle les envois vers la session ont été abandonnés.
+    public enum SendFailure {
+        ERROR,    // Erreur d'envoi (connexion interrompue, etc.).
+        TIMEOUT   // Envoi bloqué au-delà du délai autorisé.
+    }
+
+    // Canaux auxquels la session est abonnée (un seul, sauf pour une connexion multiplexée).
+    private final Set<Integer> channels = ConcurrentHashMap.newKeySet();
+
+    public OutboundSession(WebSocketSession session, ChatSessionContext context, int capacity,
+                           OverflowPolicy overflowPolicy, Executor senderPool) {
+        this.session = session;
+        this.context = context;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.senderPool = senderPool;
+        this.wireFormat = WireFormat.of(session.getAcceptedProtocol());
+    }
+
+    // Dépose un message dans la file sans jamais bloquer l'appelant.
+    // Retourne false si le message n'a pas pu être mis en file.
+    public boolean enqueue(WebSocketMessage<?> message) {
+        if (!session.isOpen()) return false;
+
+        if (!queue.offer(message)) {
+            switch (overflowPolicy) {
+                case DROP_OLDEST -> {
+                    // On libère de la place en sacrifiant les messages les plus anciens.
+                    while (!queue.offer(message)) {
+                        if (queue.poll() != null) dropped.incrementAndGet();
+                    }
+                }
+                case DROP_NEWEST -> {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                case DISCONNECT -> {
+                    dropped.incrementAndGet();
+                    close(CloseStatus.SESSION_NOT_RELIABLE);
+                    return false;
+                }
+            }
+        }
+
+        scheduleDrain();
+        return true;
+    }
+
+    // Planifie une tâche d'envoi si aucune n'est déjà active pour cette session.
+    private void scheduleDrain() {
+        if (!draining.compareAndSet(false, true)) return;
+
+        try {
+            senderPool.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // Le pool est arrêté (fermeture de l'application) : on abandonne les envois.
+            draining.set(false);
+            queue.clear();
+        }
+    }
+
+    // Envoie les messages en attente, un par un et dans l'ordre.
+    private void drain() {
+        try {
+            WebSocketMessage<?> message;
+            while ((message = queue.poll()) != null) {
+                if (!session.isOpen()) {
+                    queue.clear();
+                    return;
+                }
+                sendStartedAt = System.nanoTime();
+                session.sendMessage(message);
+                sendStartedAt = 0;
+            }
+        } catch (IOException | IllegalStateException e) {
+            // La session est fermée ; l'échec est compté dans les statistiques du handler (afterConnectionClosed).
+            // Si closeIfStalled l'a déjà fermée, la cause reste TIMEOUT.
+            if (failure == null) fail(SendFailure.ERROR);
+            else queue.clear();
+        } finally {
+            sendStartedAt = 0;
+            draining.set(false);
+            // Un message a pu être déposé entre le dernier poll et la remise à zéro du drapeau.
+            if (!queue.isEmpty()) scheduleDrain();
+        }
+    }
+
+    // Abandonne les envois en attente et ferme la session.
+    private void fail(SendFailure cause) {
+        failure = cause;
+        queue.clear();
+        close(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    // Ferme la session si l'envoi en cours a commencé il y a plus de 'limitNanos'. Retourne vrai si elle a été fermée.
+    public boolean closeIfStalled(long now, long limitNanos) {
+        long startedAt = sendStartedAt;
+        if (startedAt == 0 || now - startedAt <= limitNanos || failure != null) return false;
+
+        fail(SendFailure.TIMEOUT);
+        return true;
+    }
+
+    // Ajoute un canal aux abonnements de la session. Retourne false si elle y était déjà abonnée.
+    public boolean subscribe(int channelId) {
+        return channels.add(channelId);
+    }
+
+    // Retire un canal des abonnements de la session. Retourne false si elle n'y était pas abonnée.
+    public boolean unsubscribe(int channelId) {
+        return channels.remove(channelId);
+    }
+
+    public boolean isSubscribed(int channelId) {
+        return channels.contains(channelId);
+    }
+
+    // Ferme la session en ignorant les erreurs (session déjà fermée, etc.).
+    public void close(CloseStatus status) {
+        try {
+            session.close(status);
+        } catch (IOException | IllegalStateException e) {
+            // Session déjà fermée ou connexion interrompue : il n'y a plus rien à fermer.
+        }
+    }
+
+    // Getters :
+
+    // Canal et utilisateur de la session, établis au handshake.
+    public ChatSessionContext getContext() {
+        return context;
+    }
+
+    // Canaux auxquels la session est abonnée (vue concurrente).
+    public Set<Integer> getChannels() {
+        return Collections.unmodifiableSet(channels);
+    }
+
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    public WebSocketSession getSession() {
+        return session;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public SendFailure getFailure() {
+        return failure;
+    }
+}
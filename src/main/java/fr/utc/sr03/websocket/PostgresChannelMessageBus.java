@@ -0,0 +1,245 @@
+package fr.utc.sr03.websocket;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Implémentation du bus pour plusieurs instances de l'application, basée sur LISTEN/NOTIFY de Postgres.
+// Chaque canal correspond à un canal de notification "chat_<channelId>". Un noeud n'écoute (LISTEN) que les canaux
+// pour lesquels il a des sessions locales. Les notifications portent l'identifiant du noeud émetteur, ce qui permet
+// à celui-ci d'ignorer ses propres messages (il les a déjà remis à ses handlers locaux).
+// Les événements de synchronisation (voir ClusterSync) passent par le canal de notification "chat_sync",
+// écouté en permanence par tous les noeuds.
+@Component
+@ConditionalOnProperty(name = "chat.bus.type", havingValue = "postgres")
+public class PostgresChannelMessageBus implements ChannelMessageBus {
+
+    // Taille maximale d'une notification acceptée par Postgres (8000 octets, marge incluse).
+    private static final int MAX_NOTIFY_BYTES = 7900;
+
+    // Canal de notification des événements de synchronisation.
+    private static final String SYNC_CHANNEL = "chat_sync";
+
+    private final DataSource dataSource;
+
+    // Identifiant unique de ce noeud.
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // Handlers locaux abonnés, par ID de canal.
+    private final Map<Integer, Set<ChannelMessageListener>> listenersByChannel = new ConcurrentHashMap<>();
+
+    // Canaux dont les abonnés locaux ont changé depuis le dernier passage du thread d'écoute (seul à utiliser
+    // la connexion d'écoute). Celui-ci décide alors de LISTEN ou UNLISTEN d'après l'état courant de
+    // 'listenersByChannel', et non d'après l'ordre des changements : des abonnements et désabonnements
+    // simultanés ne peuvent pas laisser le noeud sourd à un canal qui a des abonnés.
+    private final Set<Integer> changedChannels = ConcurrentHashMap.newKeySet();
+
+    // Destinataire des événements de synchronisation (null tant qu'il n'est pas enregistré).
+    private volatile ClusterSyncListener syncListener;
+
+    // Publication des notifications hors du thread de diffusion, dans l'ordre d'émission.
+    private final ExecutorService publisher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "pg-bus-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Délai d'attente (ms) des notifications entre deux traitements des commandes en attente.
+    @Value("${chat.bus.poll-interval-ms:200}")
+    private int pollIntervalMs;
+
+    private Thread listenerThread;
+    private volatile boolean running;
+
+    public PostgresChannelMessageBus(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    // Démarre le thread d'écoute des notifications.
+    @PostConstruct
+    public void start() {
+        running = true;
+        listenerThread = new Thread(this::listen, "pg-bus-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    // Arrête l'écoute et la publication.
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        publisher.shutdown();
+        listenerThread.join(2L * pollIntervalMs + 1000);
+    }
+
+    @Override
+    public void subscribe(int channelId, ChannelMessageListener listener) {
+        listenersByChannel.computeIfAbsent(channelId, id -> ConcurrentHashMap.newKeySet()).add(listener);
+        changedChannels.add(channelId);
+    }
+
+    @Override
+    public void unsubscribe(int channelId, ChannelMessageListener listener) {
+        listenersByChannel.computeIfPresent(channelId, (id, listeners) -> {
+            listeners.remove(listener);
+            return listeners.isEmpty() ? null : listeners;
+        });
+        changedChannels.add(channelId);
+    }
+
+    @Override
+    public void publish(int channelId, String payload, ChannelMessageListener origin) {
+        // Les messages trop longs sont refusés à la réception (MessageSocketParser) : un message qui ne tiendrait
+        // pas dans une notification n'est diffusé sur aucun noeud, plutôt que sur celui-ci seulement.
+        String notification = nodeId + "|" + payload;
+        if (notification.getBytes(StandardCharsets.UTF_8).length > MAX_NOTIFY_BYTES) {
+            throw new IllegalArgumentException("Message trop volumineux pour NOTIFY (canal " + channelId + ").");
+        }
+
+        // Les autres handlers de ce noeud sont servis directement.
+        deliver(channelId, payload, origin);
+        notifyAsync(notifyChannel(channelId), notification);
+    }
+
+    @Override
+    public void publishSync(String event) {
+        notifyAsync(SYNC_CHANNEL, nodeId + "|" + event);
+    }
+
+    @Override
+    public void setSyncListener(ClusterSyncListener listener) {
+        this.syncListener = listener;
+    }
+
+    // Méthodes privées :
+
+    // Envoie une notification depuis le thread de publication, dans l'ordre d'émission.
+    private void notifyAsync(String channel, String notification) {
+        publisher.execute(() -> {
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement ps = conn.prepareStatement("SELECT pg_notify(?, ?)")) {
+                ps.setString(1, channel);
+                ps.setString(2, notification);
+                ps.execute();
+            } catch (SQLException e) {
+                System.err.println("Échec de la publication sur " + channel + " : " + e.getMessage());
+            }
+        });
+    }
+
+    // Boucle du thread d'écoute. En cas de perte de la connexion, on se reconnecte et on rétablit les LISTEN ;
+    // les événements de synchronisation publiés pendant la coupure sont perdus, l'état partagé est donc rechargé.
+    private void listen() {
+        boolean reconnecting = false;
+        while (running) {
+            try (Connection conn = dataSource.getConnection();
+                 Statement statement = conn.createStatement()) {
+                conn.setAutoCommit(true);
+                PGConnection pgConn = conn.unwrap(PGConnection.class);
+
+                // (Ré)abonnement aux événements de synchronisation et à tous les canaux ayant des sessions locales.
+                statement.execute("LISTEN " + SYNC_CHANNEL);
+                Set<Integer> listening = new HashSet<>();
+                for (Integer channelId : listenersByChannel.keySet()) {
+                    statement.execute("LISTEN " + notifyChannel(channelId));
+                    listening.add(channelId);
+                }
+
+                ClusterSyncListener listener = syncListener;
+                if (reconnecting && listener != null) listener.onResync();
+                reconnecting = true;
+
+                while (running) {
+                    updateListens(statement, listening);
+
+                    PGNotification[] notifications = pgConn.getNotifications(pollIntervalMs);
+                    if (notifications == null) continue;
+
+                    for (PGNotification notification : notifications) {
+                        dispatch(notification);
+                    }
+                }
+            } catch (SQLException e) {
+                System.err.println("Connexion d'écoute Postgres perdue : " + e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Met la connexion d'écoute en accord avec les abonnés locaux des canaux qui ont changé.
+    // 'listening' contient les canaux écoutés par cette connexion.
+    private void updateListens(Statement statement, Set<Integer> listening) throws SQLException {
+        Iterator<Integer> changed = changedChannels.iterator();
+        while (changed.hasNext()) {
+            int channelId = changed.next();
+            changed.remove();
+
+            boolean subscribed = listenersByChannel.containsKey(channelId);
+            if (subscribed && listening.add(channelId)) {
+                statement.execute("LISTEN " + notifyChannel(channelId));
+            } else if (!subscribed && listening.remove(channelId)) {
+                statement.execute("UNLISTEN " + notifyChannel(channelId));
+            }
+        }
+    }
+
+    // Remet une notification reçue aux handlers locaux, sauf si elle provient de ce noeud.
+    private void dispatch(PGNotification notification) {
+        String parameter = notification.getParameter();
+        int separator = parameter.indexOf('|');
+        if (separator < 0 || parameter.substring(0, separator).equals(nodeId)) return;
+
+        if (notification.getName().equals(SYNC_CHANNEL)) {
+            ClusterSyncListener listener = syncListener;
+            if (listener != null) listener.onSyncEvent(parameter.substring(separator + 1));
+            return;
+        }
+
+        try {
+            int channelId = Integer.parseInt(notification.getName().substring("chat_".length()));
+            deliver(channelId, parameter.substring(separator + 1), null);
+        } catch (NumberFormatException e) {
+            System.err.println("Notification ignorée sur " + notification.getName());
+        }
+    }
+
+    // Remet un message aux handlers locaux abonnés au canal, sauf à l'émetteur.
+    private void deliver(int channelId, String payload, ChannelMessageListener origin) {
+        Set<ChannelMessageListener> listeners = listenersByChannel.get(channelId);
+        if (listeners == null) return;
+
+        for (ChannelMessageListener listener : listeners) {
+            if (listener != origin) {
+                listener.onChannelMessage(channelId, payload);
+            }
+        }
+    }
+
+    // Nom du canal de notification Postgres associé à un canal de discussion.
+    private static String notifyChannel(int channelId) {
+        return "chat_" + channelId;
+    }
+}
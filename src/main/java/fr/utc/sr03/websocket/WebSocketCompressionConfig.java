@@ -0,0 +1,54 @@
+package fr.utc.sr03.websocket;
+
+import io.undertow.websockets.extensions.PerMessageDeflateHandshake;
+import io.undertow.websockets.jsr.WebSocketDeploymentInfo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.undertow.UndertowServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Compression "permessage-deflate" (RFC 7692) des trames WebSocket, proposée par Undertow lors du handshake.
+// Les messages de discussion (JSON répétitif) se compressent très bien : utile aux clients sur des liens lents.
+// L'extension n'est utilisée que si le client la demande (en-tête Sec-WebSocket-Extensions, envoyé par les navigateurs) ;
+// les autres clients continuent de recevoir des trames non compressées.
+// Garder le contexte de compression d'un message à l'autre ("context takeover") améliore nettement le taux
+// de compression de petits messages semblables, au prix d'environ 300 Ko de mémoire par connexion.
+@Configuration
+@ConditionalOnProperty(name = "chat.websocket.deflate.enabled", havingValue = "true")
+public class WebSocketCompressionConfig {
+
+    // Niveau de compression zlib (1 : le plus rapide, 9 : le plus compact).
+    @Value("${chat.websocket.deflate.level:6}")
+    private int level;
+
+    // Si vrai, le serveur garde son contexte de compression entre les messages d'une connexion.
+    @Value("${chat.websocket.deflate.server-context-takeover:true}")
+    private boolean serverContextTakeover;
+
+    // Si vrai, le client peut garder son contexte de compression entre les messages qu'il envoie.
+    @Value("${chat.websocket.deflate.client-context-takeover:true}")
+    private boolean clientContextTakeover;
+
+    // Ajoute l'extension à la configuration WebSocket d'Undertow. Ce customizer, sans ordre, est appliqué
+    // après celui de Spring Boot qui crée cette configuration.
+    @Bean
+    public WebServerFactoryCustomizer<UndertowServletWebServerFactory> perMessageDeflateCustomizer() {
+        return new WebServerFactoryCustomizer<>() {
+            @Override
+            public void customize(UndertowServletWebServerFactory factory) {
+                factory.addDeploymentInfoCustomizers(deploymentInfo -> {
+                    WebSocketDeploymentInfo info = (WebSocketDeploymentInfo) deploymentInfo
+                            .getServletContextAttributes().get(WebSocketDeploymentInfo.ATTRIBUTE_NAME);
+                    if (info == null) {
+                        info = new WebSocketDeploymentInfo();
+                        deploymentInfo.addServletContextAttribute(WebSocketDeploymentInfo.ATTRIBUTE_NAME, info);
+                    }
+                    info.addExtension(new PerMessageDeflateHandshake(
+                            false, level, serverContextTakeover, clientContextTakeover));
+                });
+            }
+        };
+    }
+}
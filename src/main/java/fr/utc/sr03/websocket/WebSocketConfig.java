@@ -1,24 +1,136 @@
 package fr.utc.sr03.websocket;
 
-import fr.utc.sr03.services.ServicesRequest;
+import fr.utc.sr03.services.AccessTokenService;
+import fr.utc.sr03.services.MembershipIndex;
+import fr.utc.sr03.services.MessageHistoryWriter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 @Configuration
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
 
-    // Objet ServiceRequest destiné à être injecté dans le DynamicWebSocketHandler.
+    // Index des membres des canaux, consulté à chaque diffusion de message.
+    @Autowired
+    private MembershipIndex membershipIndex;
+
+    // Historisation des messages reçus.
+    @Autowired
+    private MessageHistoryWriter historyWriter;
+
+    // Bus de diffusion entre instances (boucle locale par défaut, Postgres LISTEN/NOTIFY si chat.bus.type=postgres).
+    @Autowired
+    private ChannelMessageBus channelMessageBus;
+
+    // Vérification des jetons d'accès lors du handshake.
     @Autowired
-    private ServicesRequest servicesRequest;
+    private AccessTokenService accessTokenService;
+
+    // Si vrai (par défaut), les connexions WebSocket sans jeton d'accès sont refusées (voir SecurityConfig).
+    @Value("${chat.security.require-token:true}")
+    private boolean requireToken;
+
+    // Nombre maximal de canaux suivis par une même connexion multiplexée.
+    @Value("${chat.websocket.multiplex.max-channels:200}")
+    private int maxChannelsPerConnection;
+
+    // Nombre de threads chargés de vider les files d'envoi des sessions.
+    @Value("${chat.websocket.outbound.sender-threads:4}")
+    private int senderThreads;
+
+    // Nombre maximal de messages en attente par session.
+    @Value("${chat.websocket.outbound.queue-capacity:256}")
+    private int queueCapacity;
+
+    // Durée maximale (ms) d'un envoi vers une session : au-delà, le client est considéré comme bloqué
+    // et sa session est fermée, pour libérer le thread d'envoi.
+    @Value("${chat.websocket.outbound.send-time-limit-ms:10000}")
+    private long sendTimeLimitMs;
+
+    // Politique en cas de file pleine : DROP_OLDEST, DROP_NEWEST ou DISCONNECT.
+    @Value("${chat.websocket.outbound.overflow-policy:DROP_OLDEST}")
+    private OutboundSession.OverflowPolicy overflowPolicy;
+
+    // Regroupement des messages des canaux très actifs (désactivé par défaut : le client doit alors accepter
+    // des trames contenant un tableau de messages).
+    @Value("${chat.websocket.batching.enabled:false}")
+    private boolean batchingEnabled;
+
+    // Durée (ms) de la fenêtre pendant laquelle les messages d'un canal actif sont regroupés.
+    @Value("${chat.websocket.batching.window-ms:10}")
+    private long batchingWindowMs;
+
+    // Débit (messages par seconde) à partir duquel un canal est regroupé.
+    @Value("${chat.websocket.batching.hot-rate:50}")
+    private int batchingHotRate;
+
+    // Nombre maximal de messages par trame regroupée.
+    @Value("${chat.websocket.batching.max-batch-size:100}")
+    private int batchingMaxSize;
+
+    // Pool d'envoi partagé par toutes les sessions WebSocket, arrêté avec le contexte Spring.
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService webSocketSenderPool() {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "ws-sender-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Vérification périodique des envois bloqués (voir DynamicWebSocketHandler.closeStalledSessions),
+    // arrêtée avec le contexte Spring.
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService webSocketSendWatchdog() {
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ws-send-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, sendTimeLimitMs / 2);
+        DynamicWebSocketHandler handler = dynamicWebSocketHandler();
+        watchdog.scheduleAtFixedRate(() -> handler.closeStalledSessions(sendTimeLimitMs),
+                period, period, TimeUnit.MILLISECONDS);
+        return watchdog;
+    }
+
+    // Regroupement des messages, dont le thread de planification est arrêté avec le contexte Spring.
+    @Bean(destroyMethod = "shutdown")
+    public ChannelBatcher channelBatcher() {
+        return new ChannelBatcher(batchingEnabled, batchingWindowMs, batchingHotRate, batchingMaxSize);
+    }
+
+    // Handler des salons de discussion, exposé comme bean pour pouvoir consulter ses statistiques.
+    @Bean
+    public DynamicWebSocketHandler dynamicWebSocketHandler() {
+        return new DynamicWebSocketHandler(membershipIndex, historyWriter, channelMessageBus,
+                webSocketSenderPool(), queueCapacity, overflowPolicy, maxChannelsPerConnection,
+                channelBatcher());
+    }
 
     // Méthode pour enregistrer les handlers WebSocket dynamiquement.
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        registry.addHandler(new DynamicWebSocketHandler(servicesRequest), "/message/{channelId}")
+        // Une connexion par canal.
+        registry.addHandler(dynamicWebSocketHandler(), "/message/{channelId}")
+                .addInterceptors(new ChatHandshakeInterceptor(accessTokenService, membershipIndex, requireToken, false))
+                .setAllowedOrigins("*");
+
+        // Une seule connexion pour tous les canaux de l'utilisateur (abonnements par trames de contrôle).
+        registry.addHandler(dynamicWebSocketHandler(), "/messages")
+                .addInterceptors(new ChatHandshakeInterceptor(accessTokenService, membershipIndex, requireToken, true))
                 .setAllowedOrigins("*");
     }
 }
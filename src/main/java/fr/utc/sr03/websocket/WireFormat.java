@@ -0,0 +1,81 @@
+package fr.utc.sr03.websocket;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+// Format des trames d'une session WebSocket, choisi par le client lors du handshake (en-tête Sec-WebSocket-Protocol) :
+// - JSON (par défaut, ou sous-protocole "chat.json") : trames texte, comme jusqu'ici ;
+// - CBOR (sous-protocole "chat.cbor") : trames binaires contenant le même document, encodé en CBOR (RFC 8949).
+// Le serveur traite toujours les messages sous forme de texte JSON : une trame CBOR reçue est convertie en JSON
+// à l'entrée, et un message diffusé n'est converti en CBOR qu'une fois, s'il a au moins un destinataire CBOR.
+// Les clients des deux formats peuvent donc partager un même canal.
+public enum WireFormat {
+    JSON("chat.json"),
+    CBOR("chat.cbor");
+
+    // Fabriques de parseurs et générateurs partagées (thread-safe).
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+
+    // Nom du sous-protocole WebSocket correspondant.
+    private final String protocol;
+
+    WireFormat(String protocol) {
+        this.protocol = protocol;
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    // Format associé au sous-protocole accepté lors du handshake (JSON si aucun n'a été négocié).
+    public static WireFormat of(String acceptedProtocol) {
+        return CBOR.protocol.equals(acceptedProtocol) ? CBOR : JSON;
+    }
+
+    // Construit la trame à envoyer pour un document JSON (déjà validé ou produit par le serveur).
+    public WebSocketMessage<?> encode(String json) {
+        if (this == JSON) return new TextMessage(json);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length());
+        try (JsonParser parser = JSON_FACTORY.createParser(json);
+             JsonGenerator generator = CBOR_FACTORY.createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new BinaryMessage(out.toByteArray());
+    }
+
+    // Convertit une trame CBOR reçue en texte JSON. Lève une IOException si elle n'est pas du CBOR valide
+    // ou si elle contient plus d'un document.
+    public static String decodeCbor(ByteBuffer payload) throws IOException {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+
+        StringWriter out = new StringWriter(bytes.length + 16);
+        try (JsonParser parser = CBOR_FACTORY.createParser(bytes);
+             JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            if (parser.nextToken() == null) {
+                throw new IOException("Trame CBOR vide.");
+            }
+            generator.copyCurrentStructure(parser);
+            if (parser.nextToken() != null) {
+                throw new IOException("Trame CBOR mal formée.");
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,10 @@
+-- Séquence des identifiants des adhésions, utilisée par l'ajout groupé des membres (insertions par lots JDBC).
+-- Member.membershipID était auparavant une colonne IDENTITY : les identifiants existants ne viennent pas
+-- de cette séquence. Elle est donc créée si besoin puis placée au-delà du plus grand identifiant existant,
+-- y compris si Hibernate (ddl-auto) l'a déjà créée en partant de 1.
+-- L'incrément doit être égal à allocationSize (50) : l'optimiseur "pooled" d'Hibernate réserve les identifiants
+-- (valeur - 49) à valeur à chaque appel de nextval.
+CREATE SEQUENCE IF NOT EXISTS members_seq START WITH 1 INCREMENT BY 50;
+ALTER SEQUENCE members_seq INCREMENT BY 50;
+
+SELECT setval('members_seq', COALESCE(MAX(membershipid), 0) + 50) FROM members;
@@ -0,0 +1,55 @@
+-- Schéma de base de l'application. Les noms de colonnes sont ceux produits par la stratégie de nommage
+-- par défaut de Spring Boot (CamelCaseToUnderscoresNamingStrategy) à partir des @Column des entités :
+-- "firstName" devient first_name, mais "userID" devient userid (pas de '_' devant une suite de majuscules).
+-- Les tables existantes ne sont pas modifiées : la migration peut être appliquée sur une base déjà en service.
+
+CREATE TABLE IF NOT EXISTS users (
+    userid     SERIAL PRIMARY KEY,
+    first_name VARCHAR(255),
+    last_name  VARCHAR(255),
+    mail       VARCHAR(255),
+    password   VARCHAR(255),
+    admin      BOOLEAN NOT NULL DEFAULT FALSE,
+    avatar     VARCHAR(64)
+);
+
+CREATE TABLE IF NOT EXISTS channels (
+    channel_id      SERIAL PRIMARY KEY,
+    title           VARCHAR(255),
+    description     VARCHAR(255),
+    date            TIMESTAMP(6),
+    end_of_validity TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS members (
+    membershipid INTEGER PRIMARY KEY,
+    userid       INTEGER,
+    channelid    INTEGER,
+    creator      BOOLEAN NOT NULL DEFAULT FALSE,
+    join_date    TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS messages (
+    messageid BIGINT PRIMARY KEY,
+    channelid INTEGER,
+    userid    INTEGER,
+    content   TEXT,
+    timestamp TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS avatars (
+    hash               VARCHAR(64) PRIMARY KEY,
+    content_type       VARCHAR(255),
+    data               BYTEA,
+    thumb32            BYTEA,
+    thumb64            BYTEA,
+    thumb128           BYTEA,
+    thumb_content_type VARCHAR(255)
+);
+
+-- Séquence des identifiants des messages, insérés par lots (allocationSize = 50 côté Hibernate, optimiseur "pooled").
+-- Elle est placée au-delà des identifiants existants : le prochain bloc commence après le plus grand ID.
+-- (La séquence des adhésions est créée par V1_1.)
+CREATE SEQUENCE IF NOT EXISTS messages_seq START WITH 1 INCREMENT BY 50;
+
+SELECT setval('messages_seq', COALESCE(MAX(messageid), 0) + 50) FROM messages;
@@ -0,0 +1,43 @@
+-- Index et contraintes utilisés par les requêtes fréquentes de ServicesRequest.
+
+-- Adhésions en double (possibles avant l'ajout groupé des membres) : on garde la plus ancienne,
+-- en lui conservant le rôle de créateur si l'un des doublons l'avait.
+UPDATE members m
+SET creator = TRUE
+WHERE NOT m.creator
+  AND EXISTS (SELECT 1 FROM members d
+              WHERE d.channelid = m.channelid AND d.userid = m.userid AND d.creator);
+
+DELETE FROM members m
+USING members d
+WHERE m.channelid = d.channelid
+  AND m.userid = d.userid
+  AND m.membershipid > d.membershipid;
+
+-- Un utilisateur n'est membre qu'une fois d'un canal.
+-- Sert aussi aux recherches par canal (membres d'un canal, suppression d'un canal) et par couple (canal, utilisateur)
+-- (isUserInChannel, isCreatorOfChannel, removeMemberFromChannel, détection des doublons à l'ajout).
+CREATE UNIQUE INDEX IF NOT EXISTS ux_members_channel_user ON members (channelid, userid);
+
+-- Canaux d'un utilisateur selon son rôle (getUsersMemberships, getUsersOwnerships, suppression d'utilisateurs).
+CREATE INDEX IF NOT EXISTS idx_members_user_creator ON members (userid, creator, channelid);
+
+-- Recherche d'un utilisateur par son mail à chaque connexion ; deux comptes ne peuvent pas partager un mail.
+-- Des comptes en double ne sont pas supprimés automatiquement (ils ont leurs propres canaux et messages) :
+-- la migration s'arrête en listant les mails concernés, à fusionner ou corriger avant de relancer l'application.
+DO $$
+DECLARE
+    duplicates TEXT;
+BEGIN
+    SELECT string_agg(mail, ', ') INTO duplicates
+    FROM (SELECT mail FROM users WHERE mail IS NOT NULL GROUP BY mail HAVING COUNT(*) > 1) d;
+
+    IF duplicates IS NOT NULL THEN
+        RAISE EXCEPTION 'Mails utilisés par plusieurs comptes : %', duplicates;
+    END IF;
+END $$;
+
+CREATE UNIQUE INDEX IF NOT EXISTS ux_users_mail ON users (mail);
+
+-- Historique d'un canal paginé par curseur (getChannelMessages).
+CREATE INDEX IF NOT EXISTS idx_messages_channel_timestamp ON messages (channelid, timestamp, messageid);
@@ -0,0 +1,141 @@
+package fr.utc.sr03.services;
+
+import fr.utc.sr03.model.Avatar;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Migration des anciens avatars (base64 dans la table Users) : les images acceptées avant l'arrivée des limites
+// d'envoi (2 Mio, 4096 pixels) sont conservées ; seules les images illisibles sont remplacées par l'avatar par défaut.
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=validate")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({MigrationConfig.class, CacheConfig.class, AvatarStore.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers(disabledWithoutDocker = true)
+class AvatarStoreTest {
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private AvatarStore avatarStore;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    // Colonne avatar au format d'avant le stockage par empreinte (image en base64), et table vide.
+    @BeforeEach
+    void legacyAvatarColumn() {
+        execute("ALTER TABLE users ALTER COLUMN avatar TYPE TEXT");
+        execute("DELETE FROM users");
+        execute("DELETE FROM avatars");
+    }
+
+    @Test
+    void keepsLegacyAvatarsOverTheUploadLimits() throws IOException {
+        byte[] tooWide = png(5000, 8, new Random(1));
+        byte[] tooHeavy = png(1000, 1000, new Random(2));
+        assertThat(tooHeavy.length).isGreaterThan(2 * 1024 * 1024);
+
+        insertUser(1, Base64.getEncoder().encodeToString(tooWide));
+        insertUser(2, Base64.getEncoder().encodeToString(tooHeavy));
+        insertUser(3, Base64.getEncoder().encodeToString("pas une image".getBytes()));
+
+        avatarStore.migrateLegacyAvatars();
+
+        assertThat(avatarOf(1)).isEqualTo(sha256(tooWide));
+        assertThat(avatarOf(2)).isEqualTo(sha256(tooHeavy));
+        assertThat(avatarOf(3)).isEqualTo(avatarStore.getDefaultAvatarHash());
+
+        // Trop grandes pour être décodées : elles servent de miniature telles quelles.
+        Avatar wide = avatarStore.find(sha256(tooWide));
+        assertThat(wide.getContentType()).isEqualTo("image/png");
+        assertThat(wide.getThumb32()).isEqualTo(tooWide);
+        assertThat(avatarStore.getThumbnail(sha256(tooHeavy), 64).data()).isEqualTo(tooHeavy);
+    }
+
+    @Test
+    void legacyAvatarWithinLimitsGetsRealThumbnails() throws IOException {
+        byte[] image = png(300, 200, new Random(3));
+        insertUser(1, Base64.getEncoder().encodeToString(image));
+
+        avatarStore.migrateLegacyAvatars();
+
+        AvatarStore.AvatarImage thumbnail = avatarStore.getThumbnail(avatarOf(1), 32);
+        assertThat(ImageIO.read(new ByteArrayInputStream(thumbnail.data())).getWidth()).isEqualTo(32);
+    }
+
+    // Méthodes privées :
+
+    private void execute(String sql) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                em.createNativeQuery(sql).executeUpdate());
+    }
+
+    private void insertUser(int id, String avatar) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                em.createNativeQuery("INSERT INTO users (userid, first_name, last_name, mail, password, admin, avatar) " +
+                                "VALUES (:id, 'Prénom', 'Nom', :mail, 'x', false, :avatar)")
+                        .setParameter("id", id)
+                        .setParameter("mail", "user" + id + "@utc.fr")
+                        .setParameter("avatar", avatar)
+                        .executeUpdate());
+    }
+
+    private String avatarOf(int userId) {
+        return (String) em.createNativeQuery("SELECT avatar FROM users WHERE userid = :id")
+                .setParameter("id", userId)
+                .getSingleResult();
+    }
+
+    // Image PNG de bruit aléatoire (incompressible : sa taille croît avec sa surface).
+    private static byte[] png(int width, int height, Random random) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package fr.utc.sr03.services;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.FlywayException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Applique les migrations sur une base déjà en service, créée par Hibernate avant l'arrivée de Flyway
+// (identifiants IDENTITY, pas d'index, adhésions en double), avec la même configuration que MigrationConfig.
+@Testcontainers(disabledWithoutDocker = true)
+class LegacySchemaMigrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    // Schéma tel que le générait Hibernate (ddl-auto=update) avant les migrations.
+    private static final String LEGACY_SCHEMA = """
+            CREATE TABLE users (userid INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                first_name VARCHAR(255), last_name VARCHAR(255), mail VARCHAR(255), password VARCHAR(255),
+                admin BOOLEAN NOT NULL, avatar VARCHAR(64));
+            CREATE TABLE channels (channel_id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                title VARCHAR(255), description VARCHAR(255), date TIMESTAMP(6), end_of_validity TIMESTAMP(6));
+            CREATE TABLE members (membershipid INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                userid INTEGER, channelid INTEGER, creator BOOLEAN NOT NULL, join_date TIMESTAMP(6));
+            INSERT INTO users (first_name, last_name, mail, password, admin) VALUES
+                ('Ada', 'Lovelace', 'ada@utc.fr', 'x', true), ('Alan', 'Turing', 'alan@utc.fr', 'x', false);
+            INSERT INTO channels (title, description, date, end_of_validity) VALUES ('Canal', '', now(), now());
+            INSERT INTO members (userid, channelid, creator, join_date) VALUES
+                (1, 1, false, now()), (1, 1, true, now()), (2, 1, false, now());
+            """;
+
+    // Chaque test part d'une base vide.
+    @BeforeEach
+    void resetDatabase() throws SQLException {
+        execute("DROP SCHEMA public CASCADE; CREATE SCHEMA public;");
+    }
+
+    @Test
+    void migratesLegacySchemaAndMergesDuplicateMemberships() throws SQLException {
+        execute(LEGACY_SCHEMA);
+
+        flyway().migrate();
+
+        // Le doublon (1, 1) est fusionné en une seule adhésion, qui garde le rôle de créateur.
+        assertThat(queryLong("SELECT COUNT(*) FROM members WHERE userid = 1 AND channelid = 1")).isEqualTo(1);
+        assertThat(queryLong("SELECT COUNT(*) FROM members WHERE userid = 1 AND channelid = 1 AND creator"))
+                .isEqualTo(1);
+
+        // La séquence des adhésions est placée après les identifiants existants.
+        long maxId = queryLong("SELECT MAX(membershipid) FROM members");
+        assertThat(queryLong("SELECT nextval('members_seq')")).isGreaterThan(maxId + 49);
+
+        assertThat(queryLong("SELECT COUNT(*) FROM pg_indexes WHERE indexname IN " +
+                "('ux_members_channel_user', 'idx_members_user_creator', 'ux_users_mail', " +
+                "'idx_messages_channel_timestamp')")).isEqualTo(4);
+    }
+
+    // Deux comptes avec le même mail : la migration s'arrête sans rien supprimer.
+    @Test
+    void refusesToCreateMailIndexOverDuplicateAccounts() throws SQLException {
+        execute(LEGACY_SCHEMA);
+        execute("INSERT INTO users (first_name, last_name, mail, password, admin) " +
+                "VALUES ('Ada', 'Bis', 'ada@utc.fr', 'x', false)");
+
+        assertThatThrownBy(() -> flyway().migrate())
+                .isInstanceOf(FlywayException.class)
+                .hasMessageContaining("ada@utc.fr");
+        assertThat(queryLong("SELECT COUNT(*) FROM users")).isEqualTo(3);
+    }
+
+    // Méthodes privées :
+
+    private static Flyway flyway() {
+        return Flyway.configure()
+                .dataSource(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword())
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .load();
+    }
+
+    private static Connection connect() throws SQLException {
+        return DriverManager.getConnection(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+    }
+
+    private static void execute(String sql) throws SQLException {
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static long queryLong(String sql) throws SQLException {
+        try (Connection connection = connect();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package fr.utc.sr03.services;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Un message refusé par la BDD ne doit pas faire perdre les autres messages de son lot.
+// Les tests ne sont pas transactionnels : le thread d'écriture valide ses propres transactions.
+@DataJpaTest(properties = {"spring.jpa.hibernate.ddl-auto=validate", "chat.history.flush-interval-ms=500"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({MigrationConfig.class, CacheConfig.class, MessageHistoryWriter.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers(disabledWithoutDocker = true)
+class MessageHistoryWriterTest {
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private MessageHistoryWriter writer;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Test
+    void invalidMessageDoesNotDropTheRestOfItsBatch() throws InterruptedException {
+        // Postgres refuse le caractère NUL dans un texte (SQLSTATE 22021) : erreur de données, non passagère.
+        List<String> contents = List.of("un", "deux", "trois\u0000", "quatre", "cinq");
+        for (String content : contents) {
+            assertThat(writer.enqueue(7, 1, content)).isTrue();
+        }
+
+        writer.stop();
+
+        assertThat(writer.getStats())
+                .containsEntry("written", 4L)
+                .containsEntry("failed", 1L)
+                .containsEntry("retried", 0L);
+        assertThat(em.createNativeQuery("SELECT content FROM messages WHERE channelid = 7 ORDER BY messageid")
+                .getResultList())
+                .containsExactly("un", "deux", "quatre", "cinq");
+    }
+}
@@ -0,0 +1,121 @@
+package fr.utc.sr03.services;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Applique les migrations Flyway sur une base Postgres vierge, puis :
+// - fait valider le schéma obtenu par Hibernate (tables, colonnes et séquences attendues par les entités) ;
+// - vérifie, par EXPLAIN, que les requêtes fréquentes de ServicesRequest utilisent les index créés par V2.
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=validate")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({MigrationConfig.class, CacheConfig.class})
+@Testcontainers(disabledWithoutDocker = true)
+class SchemaMigrationTest {
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @PersistenceContext
+    private EntityManager em;
+
+    // Quelques lignes dans chaque table, et parcours séquentiels désactivés : sur des tables aussi petites,
+    // le planificateur les préférerait aux index, ce qui ne dirait rien des plans sur une vraie base.
+    @BeforeEach
+    void insertRowsAndDisableSeqScans() {
+        for (int i = 1; i <= 20; i++) {
+            // Identifiants explicites : les séquences SERIAL ne reviennent pas en arrière avec le rollback de chaque test.
+            execute("INSERT INTO users (userid, first_name, last_name, mail, password, admin) " +
+                    "VALUES (" + i + ", 'Prénom', 'Nom', 'user" + i + "@utc.fr', 'x', false)");
+            execute("INSERT INTO channels (channel_id, title, description, date, end_of_validity) " +
+                    "VALUES (" + i + ", 'Canal " + i + "', '', now(), now() + interval '1 day')");
+        }
+        for (int i = 1; i <= 20; i++) {
+            execute("INSERT INTO members (membershipid, userid, channelid, creator, join_date) " +
+                    "VALUES (nextval('members_seq'), " + i + ", " + (i % 5 + 1) + ", " + (i <= 5) + ", now())");
+            execute("INSERT INTO messages (messageid, channelid, userid, content, timestamp) " +
+                    "VALUES (nextval('messages_seq'), " + (i % 5 + 1) + ", " + i + ", 'Bonjour', now())");
+        }
+        execute("SET LOCAL enable_seqscan = off");
+    }
+
+    // Connexion : recherche d'un utilisateur par mail (findByEmail, loadUserByUsername).
+    @Test
+    void userLookupByMailUsesUniqueIndex() {
+        assertThat(explain("SELECT * FROM users WHERE mail = 'user3@utc.fr'"))
+                .contains("ux_users_mail");
+    }
+
+    // Adhésion d'un utilisateur à un canal (isUserInChannel, isCreatorOfChannel, removeMemberFromChannel).
+    @Test
+    void membershipLookupUsesChannelUserIndex() {
+        assertThat(explain("SELECT COUNT(*) FROM members WHERE userid = 3 AND channelid = 4"))
+                .contains("ux_members_channel_user");
+    }
+
+    // Membres d'un canal (getChannelsMembers, suppression d'un canal).
+    @Test
+    void channelMembersUseChannelUserIndex() {
+        assertThat(explain("SELECT u.* FROM users u JOIN members m ON m.userid = u.userid WHERE m.channelid = 2"))
+                .contains("ux_members_channel_user");
+    }
+
+    // Canaux d'un utilisateur selon son rôle (getUsersMemberships, getUsersOwnerships).
+    @Test
+    void userChannelsUseUserCreatorIndex() {
+        assertThat(explain("SELECT c.* FROM channels c JOIN members m ON c.channel_id = m.channelid " +
+                "WHERE m.userid = 3 AND m.creator = false"))
+                .contains("idx_members_user_creator");
+    }
+
+    // Page d'historique d'un canal (getChannelMessages).
+    @Test
+    void channelHistoryUsesChannelTimestampIndex() {
+        assertThat(explain("SELECT * FROM messages WHERE channelid = 2 " +
+                "ORDER BY timestamp DESC, messageid DESC LIMIT 50"))
+                .contains("idx_messages_channel_timestamp");
+    }
+
+    // L'aperçu des membres de l'écran d'accueil (requête SQL de getUserBootstrap) s'exécute sur le schéma migré
+    // et renvoie au plus 'previewSize' membres par canal, le créateur en tête.
+    @Test
+    @SuppressWarnings("unchecked")
+    void memberPreviewQueryRunsOnMigratedSchema() {
+        List<Object[]> rows = em.createNativeQuery(ServicesRequest.MEMBER_PREVIEW_SQL)
+                .setParameter("ids", List.of(2, 3))
+                .setParameter("previewSize", 2)
+                .getResultList();
+
+        assertThat(rows).hasSize(4);
+        assertThat(rows).extracting(row -> ((Number) row[0]).intValue()).containsExactly(2, 2, 3, 3);
+        assertThat(rows.get(0)[5]).isEqualTo(false);
+        assertThat(rows.get(0)[2]).isEqualTo("Prénom");
+    }
+
+    // Méthodes privées :
+
+    private void execute(String sql) {
+        em.createNativeQuery(sql).executeUpdate();
+    }
+
+    // Plan d'exécution d'une requête, sous forme de texte.
+    @SuppressWarnings("unchecked")
+    private String explain(String sql) {
+        List<Object> lines = em.createNativeQuery("EXPLAIN " + sql).getResultList();
+        return lines.stream().map(Object::toString).collect(Collectors.joining("\n"));
+    }
+}
@@ -0,0 +1,184 @@
+package fr.utc.sr03.websocket;
+
+import fr.utc.sr03.services.MembershipIndex;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Banc d'essai reproductible du regroupement des messages (ChannelBatcher), activé puis désactivé,
+// pour plusieurs débits d'un même canal. Ce n'est pas un test JUnit : il se lance à la main, par exemple
+//   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+//   java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+//        fr.utc.sr03.websocket.ChannelBatchingBenchmark [sessions] [secondes] [coût d'une trame en µs]
+// Le vrai DynamicWebSocketHandler diffuse les messages reçus par le bus (comme ceux d'un autre noeud) à des sessions
+// simulées. Chaque trame envoyée coûte un temps fixe (écriture réseau, en-têtes, appel système), le reste du coût
+// étant celui du serveur. Pour chaque débit et chaque mode, on mesure les trames envoyées, les messages perdus
+// (files pleines), le temps CPU consommé et la latence (création du message -> envoi de sa trame) d'une session.
+// Les paramètres du regroupement sont ceux par défaut de WebSocketConfig (fenêtre 10 ms, seuil 50 msg/s, 100 max).
+public final class ChannelBatchingBenchmark {
+
+    private static final int CHANNEL_ID = 1;
+    private static final int[] RATES = {20, 200, 1_000, 5_000};
+
+    private ChannelBatchingBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long frameCostNanos = (args.length > 2 ? Long.parseLong(args[2]) : 2) * 1000;
+
+        System.out.printf("sessions=%d durée=%ds coût/trame=%dµs processeurs=%d%n",
+                sessions, seconds, frameCostNanos / 1000, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%8s %9s %12s %12s %10s %9s %10s %10s%n",
+                "msg/s", "batching", "trames", "octets", "perdus", "CPU (s)", "p50 (ms)", "p99 (ms)");
+
+        // Un premier passage, non affiché, pour que le JIT ait compilé le chemin de diffusion.
+        run(false, 1_000, sessions, 1, frameCostNanos);
+        run(true, 1_000, sessions, 1, frameCostNanos);
+
+        for (int rate : RATES) {
+            for (boolean batching : new boolean[]{false, true}) {
+                Result r = run(batching, rate, sessions, seconds, frameCostNanos);
+                System.out.printf("%8d %9s %12d %12d %10d %9.2f %10.2f %10.2f%n",
+                        rate, batching ? "oui" : "non", r.frames, r.bytes, r.dropped, r.cpuSeconds, r.p50Ms, r.p99Ms);
+            }
+        }
+    }
+
+    private record Result(long frames, long bytes, long dropped, double cpuSeconds, double p50Ms, double p99Ms) {}
+
+    // Méthodes privées :
+
+    private static Result run(boolean batching, int rate, int sessionCount, int seconds, long frameCostNanos)
+            throws Exception {
+        ExecutorService senderPool = Executors.newFixedThreadPool(4);
+        ChannelBatcher batcher = new ChannelBatcher(batching, 10, 50, 100);
+        MembershipIndex membershipIndex = new MembershipIndex();
+        DynamicWebSocketHandler handler = new DynamicWebSocketHandler(membershipIndex, null,
+                new LoopbackChannelMessageBus(), senderPool, 256, OutboundSession.OverflowPolicy.DROP_OLDEST, 200,
+                batcher);
+
+        AtomicLong frames = new AtomicLong();
+        AtomicLong bytes = new AtomicLong();
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        for (int userId = 1; userId <= sessionCount; userId++) {
+            membershipIndex.add(CHANNEL_ID, userId);
+            handler.afterConnectionEstablished(new SimulatedSession(userId, frameCostNanos, frames, bytes,
+                    userId == 1 ? latencies : null));
+        }
+
+        long cpuBefore = processCpuNanos();
+        long total = (long) rate * seconds;
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            // Envoi à intervalles réguliers, au débit demandé.
+            long due = start + i * 1_000_000_000L / rate;
+            long wait = due - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+
+            handler.onChannelMessage(CHANNEL_ID,
+                    "{\"userID\":1,\"message\":\"t" + System.nanoTime() + ";message de test de longueur moyenne\"}");
+        }
+
+        // On attend la dernière fenêtre de regroupement puis la fin des envois.
+        Thread.sleep(50);
+        while (((Number) handler.getOutboundStats().get("queued")).longValue() > 0) {
+            Thread.sleep(10);
+        }
+        long cpu = processCpuNanos() - cpuBefore;
+        long dropped = ((Number) handler.getOutboundStats().get("dropped")).longValue();
+
+        batcher.shutdown();
+        senderPool.shutdown();
+        senderPool.awaitTermination(5, TimeUnit.SECONDS);
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return new Result(frames.get(), bytes.get(), dropped, cpu / 1e9, percentile(sorted, 0.50),
+                percentile(sorted, 0.99));
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) return 0;
+        return sorted.get((int) Math.min(sorted.size() - 1, Math.round(p * (sorted.size() - 1)))) / 1e6;
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+
+    // Session simulée : chaque trame coûte 'frameCostNanos' de calcul, puis est comptée.
+    // Pour la session qui mesure la latence, les dates de création des messages de la trame sont relevées.
+    private static class SimulatedSession implements WebSocketSession {
+        private final String id;
+        private final long frameCostNanos;
+        private final AtomicLong frames;
+        private final AtomicLong bytes;
+        private final List<Long> latencies;
+        private final Map<String, Object> attributes = new HashMap<>();
+
+        SimulatedSession(int userId, long frameCostNanos, AtomicLong frames, AtomicLong bytes, List<Long> latencies) {
+            this.id = "session-" + userId;
+            this.frameCostNanos = frameCostNanos;
+            this.frames = frames;
+            this.bytes = bytes;
+            this.latencies = latencies;
+            attributes.put(ChatSessionContext.ATTRIBUTE, ChatSessionContext.forChannel(CHANNEL_ID, userId));
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            long end = System.nanoTime() + frameCostNanos;
+            while (System.nanoTime() < end) {
+                Thread.onSpinWait();
+            }
+            frames.incrementAndGet();
+            bytes.addAndGet(message.getPayloadLength());
+
+            if (latencies != null && message instanceof TextMessage text) {
+                long now = System.nanoTime();
+                String payload = text.getPayload();
+                for (int i = payload.indexOf("\"t"); i >= 0; i = payload.indexOf("\"t", i + 1)) {
+                    int endOfStamp = payload.indexOf(';', i);
+                    latencies.add(now - Long.parseLong(payload.substring(i + 2, endOfStamp)));
+                }
+            }
+        }
+
+        @Override public String getId() { return id; }
+        @Override public URI getUri() { return null; }
+        @Override public HttpHeaders getHandshakeHeaders() { return new HttpHeaders(); }
+        @Override public Map<String, Object> getAttributes() { return attributes; }
+        @Override public Principal getPrincipal() { return null; }
+        @Override public InetSocketAddress getLocalAddress() { return null; }
+        @Override public InetSocketAddress getRemoteAddress() { return null; }
+        @Override public String getAcceptedProtocol() { return null; }
+        @Override public void setTextMessageSizeLimit(int messageSizeLimit) {}
+        @Override public int getTextMessageSizeLimit() { return 0; }
+        @Override public void setBinaryMessageSizeLimit(int messageSizeLimit) {}
+        @Override public int getBinaryMessageSizeLimit() { return 0; }
+        @Override public List<WebSocketExtension> getExtensions() { return List.of(); }
+        @Override public boolean isOpen() { return true; }
+        @Override public void close() {}
+        @Override public void close(CloseStatus status) {}
+    }
+}
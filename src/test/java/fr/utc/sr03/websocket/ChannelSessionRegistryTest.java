@@ -0,0 +1,158 @@
+package fr.utc.sr03.websocket;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+// Ajouts, retraits et diffusions simultanés sur le registre des sessions, depuis de nombreux threads.
+class ChannelSessionRegistryTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 20_000;
+    private static final int CHANNELS = 4;
+
+    // Ouvertures et fermetures de chaque canal : elles doivent alterner (jamais deux ouvertures de suite).
+    private final Map<Integer, AtomicBoolean> open = new ConcurrentHashMap<>();
+    private final AtomicInteger callbackErrors = new AtomicInteger();
+    private final ChannelSessionRegistry registry = new ChannelSessionRegistry(
+            channelId -> {
+                if (!open.computeIfAbsent(channelId, id -> new AtomicBoolean()).compareAndSet(false, true)) {
+                    callbackErrors.incrementAndGet();
+                }
+            },
+            channelId -> {
+                if (!open.computeIfAbsent(channelId, id -> new AtomicBoolean()).compareAndSet(true, false)) {
+                    callbackErrors.incrementAndGet();
+                }
+            });
+
+    // Chaque thread ajoute puis retire sans cesse ses propres sessions : à la fin, tous les canaux ont perdu
+    // leur dernière session, sont retirés du registre, et chaque ouverture a été suivie d'une fermeture.
+    @Test
+    void concurrentAddAndRemoveReleaseEmptyChannels() throws Exception {
+        runConcurrently(thread -> {
+            OutboundSession session = session(thread);
+            for (int i = 0; i < ITERATIONS; i++) {
+                int channelId = i % CHANNELS;
+                registry.add(channelId, session);
+                registry.remove(channelId, session);
+            }
+        });
+
+        assertThat(registry.getChannelCount()).isZero();
+        assertThat(callbackErrors).hasValue(0);
+        assertThat(open.values()).noneMatch(AtomicBoolean::get);
+    }
+
+    // Retrait de la dernière session d'un canal pendant qu'une autre session y est ajoutée : le canal ne doit
+    // jamais disparaître du registre (ni être fermé) alors qu'une session y est encore inscrite.
+    @Test
+    void removingLastSessionNeverDropsConcurrentlyAddedOne() throws Exception {
+        List<OutboundSession> survivors = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            survivors.add(session(100 + t));
+        }
+
+        runConcurrently(thread -> {
+            OutboundSession churn = session(thread);
+            for (int i = 0; i < ITERATIONS; i++) {
+                registry.add(0, churn);
+                registry.remove(0, churn);
+            }
+            // Chaque thread laisse une session inscrite.
+            registry.add(0, survivors.get(thread));
+        });
+
+        assertThat(registry.getSessions(0)).containsExactlyInAnyOrderElementsOf(survivors);
+        assertThat(registry.getChannelCount()).isEqualTo(1);
+        assertThat(callbackErrors).hasValue(0);
+        assertThat(open.get(0)).isTrue();
+
+        for (OutboundSession survivor : survivors) {
+            registry.remove(0, survivor);
+        }
+        assertThat(registry.getChannelCount()).isZero();
+        assertThat(open.get(0)).isFalse();
+    }
+
+    // Les diffusions parcourent le canal pendant les ajouts et retraits : le parcours ne lève pas d'exception
+    // et voit toujours la session présente du début à la fin.
+    @Test
+    void broadcastSeesStableSessionDuringChurn() throws Exception {
+        OutboundSession stable = session(-1);
+        registry.add(1, stable);
+        AtomicInteger missed = new AtomicInteger();
+        AtomicInteger broadcasts = new AtomicInteger();
+
+        runConcurrently(thread -> {
+            OutboundSession session = session(thread);
+            for (int i = 0; i < ITERATIONS; i++) {
+                if (thread % 2 == 0) {
+                    registry.add(1, session);
+                    registry.remove(1, session);
+                } else {
+                    boolean seen = false;
+                    for (OutboundSession s : registry.getSessions(1)) {
+                        if (s == stable) seen = true;
+                    }
+                    if (!seen) missed.incrementAndGet();
+                    broadcasts.incrementAndGet();
+                }
+            }
+        });
+
+        assertThat(broadcasts).hasValue(THREADS / 2 * ITERATIONS);
+        assertThat(missed).hasValue(0);
+        assertThat(registry.getSessions(1)).containsExactly(stable);
+        assertThat(callbackErrors).hasValue(0);
+    }
+
+    // Méthodes privées :
+
+    private interface ThreadBody {
+        void run(int thread) throws Exception;
+    }
+
+    // Lance le même traitement sur THREADS threads, démarrés ensemble, et attend leur fin (erreurs comprises).
+    private static void runConcurrently(ThreadBody body) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    body.run(thread);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static OutboundSession session(int id) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        return new OutboundSession(session, ChatSessionContext.forChannel(0, id), 16,
+                OutboundSession.OverflowPolicy.DROP_OLDEST, Runnable::run);
+    }
+}
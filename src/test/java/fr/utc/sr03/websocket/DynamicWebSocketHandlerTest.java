@@ -0,0 +1,123 @@
+package fr.utc.sr03.websocket;
+
+import fr.utc.sr03.services.MembershipIndex;
+import fr.utc.sr03.services.MessageHistoryWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Les messages reçus d'un client sont diffusés tels quels : leur champ userID doit être l'utilisateur authentifié
+// lors du handshake, sinon un client pourrait écrire au nom d'un autre membre du canal.
+class DynamicWebSocketHandlerTest {
+
+    private final MembershipIndex membershipIndex = mock(MembershipIndex.class);
+    private final MessageHistoryWriter historyWriter = mock(MessageHistoryWriter.class);
+    private final ChannelMessageBus bus = mock(ChannelMessageBus.class);
+    private final ExecutorService senderPool = Executors.newSingleThreadExecutor();
+    private final DynamicWebSocketHandler handler = new DynamicWebSocketHandler(
+            membershipIndex, historyWriter, bus, senderPool, 16,
+            OutboundSession.OverflowPolicy.DROP_OLDEST, 10, new ChannelBatcher(false, 10, 50, 100));
+
+    @AfterEach
+    void stopSenderPool() {
+        senderPool.shutdownNow();
+    }
+
+    @Test
+    void publishesMessageSignedBySessionUser() throws Exception {
+        when(membershipIndex.isMember(4, 5)).thenReturn(true);
+        WebSocketSession session = session(ChatSessionContext.forChannel(4, 5));
+        handler.afterConnectionEstablished(session);
+
+        String payload = "{\"userID\":5,\"message\":\"bonjour\"}";
+        handler.handleTextMessage(session, new TextMessage(payload));
+
+        verify(historyWriter).enqueue(4, 5, "bonjour");
+        verify(bus).publish(4, payload, handler);
+        verify(session, never()).close(any(CloseStatus.class));
+    }
+
+    @Test
+    void closesSingleChannelSessionSendingAsAnotherUser() throws Exception {
+        WebSocketSession session = session(ChatSessionContext.forChannel(4, 5));
+        handler.afterConnectionEstablished(session);
+
+        handler.handleTextMessage(session, new TextMessage("{\"userID\":9,\"message\":\"usurpé\"}"));
+        handler.handleTextMessage(session, new TextMessage("{\"message\":\"anonyme\"}"));
+
+        verify(session, timeout(1000).times(2)).close(CloseStatus.POLICY_VIOLATION);
+        verify(historyWriter, never()).enqueue(anyInt(), anyInt(), anyString());
+        verify(bus, never()).publish(anyInt(), anyString(), any());
+    }
+
+    @Test
+    void rejectsMultiplexedFrameSentAsAnotherUser() throws Exception {
+        when(membershipIndex.isMember(4, 5)).thenReturn(true);
+        WebSocketSession session = session(ChatSessionContext.multiplexed(5));
+        handler.afterConnectionEstablished(session);
+        handler.handleTextMessage(session, new TextMessage("{\"type\":\"subscribe\",\"channelId\":4}"));
+
+        handler.handleTextMessage(session, new TextMessage(
+                "{\"type\":\"message\",\"channelId\":4,\"data\":{\"userID\":9,\"message\":\"usurpé\"}}"));
+
+        verify(session, timeout(1000)).sendMessage(argThat(message ->
+                message.getPayload().toString().contains("user-mismatch")));
+        verify(session, never()).close(any(CloseStatus.class));
+        verify(historyWriter, never()).enqueue(anyInt(), anyInt(), anyString());
+        verify(bus, never()).publish(eq(4), anyString(), any());
+    }
+
+    // Un message trop long pour être transmis aux autres noeuds n'est diffusé nulle part.
+    @Test
+    void rejectsMessageTooLargeForTheBus() throws Exception {
+        when(membershipIndex.isMember(4, 5)).thenReturn(true);
+        String text = "é".repeat(MessageSocketParser.MAX_PAYLOAD_BYTES / 2);
+
+        WebSocketSession single = session(ChatSessionContext.forChannel(4, 5));
+        handler.afterConnectionEstablished(single);
+        handler.handleTextMessage(single, new TextMessage("{\"userID\":5,\"message\":\"" + text + "\"}"));
+        verify(single).close(CloseStatus.TOO_BIG_TO_PROCESS);
+
+        WebSocketSession multiplexed = session(ChatSessionContext.multiplexed(5));
+        handler.afterConnectionEstablished(multiplexed);
+        handler.handleTextMessage(multiplexed, new TextMessage("{\"type\":\"subscribe\",\"channelId\":4}"));
+        handler.handleTextMessage(multiplexed, new TextMessage(
+                "{\"type\":\"message\",\"channelId\":4,\"data\":{\"userID\":5,\"message\":\"" + text + "\"}}"));
+        verify(multiplexed, timeout(1000)).sendMessage(argThat(message ->
+                message.getPayload().toString().contains("too-large")));
+
+        verify(historyWriter, never()).enqueue(anyInt(), anyInt(), anyString());
+        verify(bus, never()).publish(anyInt(), anyString(), any());
+    }
+
+    // Méthodes privées :
+
+    private static WebSocketSession session(ChatSessionContext context) {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(ChatSessionContext.ATTRIBUTE, context);
+
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getId()).thenReturn("session-" + context.userId());
+        return session;
+    }
+}
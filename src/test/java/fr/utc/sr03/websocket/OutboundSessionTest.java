@@ -0,0 +1,66 @@
+package fr.utc.sr03.websocket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Un client qui ne lit plus bloque l'envoi en cours : la session doit être fermée une fois le délai dépassé,
+// ce qui libère le thread du pool d'envoi.
+class OutboundSessionTest {
+
+    private final ExecutorService senderPool = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void stopSenderPool() {
+        senderPool.shutdownNow();
+    }
+
+    @Test
+    void closesSessionWhoseSendIsStalled() throws Exception {
+        // L'envoi reste bloqué jusqu'à la fermeture de la session, comme sur une connexion saturée.
+        CountDownLatch closed = new CountDownLatch(1);
+        CountDownLatch sending = new CountDownLatch(1);
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            sending.countDown();
+            closed.await();
+            throw new IOException("Channel is closed");
+        }).when(session).sendMessage(any());
+        doAnswer(invocation -> {
+            closed.countDown();
+            return null;
+        }).when(session).close(any(CloseStatus.class));
+
+        OutboundSession outbound = new OutboundSession(session, ChatSessionContext.forChannel(1, 2), 16,
+                OutboundSession.OverflowPolicy.DROP_OLDEST, senderPool);
+        outbound.enqueue(new TextMessage("bonjour"));
+        assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+
+        long limit = TimeUnit.MILLISECONDS.toNanos(100);
+        assertThat(outbound.closeIfStalled(System.nanoTime(), limit)).isFalse();
+        assertThat(outbound.closeIfStalled(System.nanoTime() + 2 * limit, limit)).isTrue();
+
+        verify(session, timeout(1000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertThat(outbound.getFailure()).isEqualTo(OutboundSession.SendFailure.TIMEOUT);
+
+        // Le thread d'envoi est libéré : le pool (un seul thread) exécute à nouveau des tâches.
+        assertThat(senderPool.submit(() -> true).get(5, TimeUnit.SECONDS)).isTrue();
+    }
+}
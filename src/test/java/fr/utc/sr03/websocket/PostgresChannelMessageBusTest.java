@@ -0,0 +1,220 @@
+package fr.utc.sr03.websocket;
+
+import fr.utc.sr03.model.Channel;
+import fr.utc.sr03.model.Member;
+import fr.utc.sr03.model.User;
+import fr.utc.sr03.services.ChannelsDeletedEvent;
+import fr.utc.sr03.services.MembershipIndex;
+import fr.utc.sr03.services.MembershipsChangedEvent;
+import fr.utc.sr03.services.UserSearchIndex;
+import fr.utc.sr03.services.UsersChangedEvent;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Plusieurs noeuds dans la même JVM : chacun a son propre PostgresChannelMessageBus (donc sa propre connexion d'écoute)
+// sur la même base, comme des instances distinctes de l'application.
+@Testcontainers(disabledWithoutDocker = true)
+class PostgresChannelMessageBusTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private final List<PostgresChannelMessageBus> nodes = new ArrayList<>();
+
+    @AfterEach
+    void stopNodes() throws InterruptedException {
+        for (PostgresChannelMessageBus node : nodes) {
+            node.stop();
+        }
+    }
+
+    // Un message publié par un handler est remis aux autres handlers du canal, sur tous les noeuds, mais pas à lui-même.
+    @Test
+    void deliversToOtherHandlersOnEveryNode() {
+        PostgresChannelMessageBus node1 = node();
+        PostgresChannelMessageBus node2 = node();
+        RecordingListener sender = new RecordingListener();
+        RecordingListener sameNode = new RecordingListener();
+        RecordingListener otherNode = new RecordingListener();
+        node1.subscribe(1, sender);
+        node1.subscribe(1, sameNode);
+        node2.subscribe(1, otherNode);
+
+        awaitListening(node1, node2, 1, sender, otherNode);
+        node1.publish(1, "{\"message\":\"bonjour\"}", sender);
+
+        await(() -> otherNode.received.contains("{\"message\":\"bonjour\"}"));
+        assertThat(sameNode.received).contains("{\"message\":\"bonjour\"}");
+        assertThat(sender.received).doesNotContain("{\"message\":\"bonjour\"}");
+    }
+
+    // Abonnements et désabonnements simultanés (dernière session d'un handler qui se ferme pendant qu'un autre
+    // handler ouvre la sienne) : le noeud doit rester à l'écoute d'un canal qui a encore des abonnés.
+    @Test
+    void keepsListeningWhileChannelHasSubscribersDespiteConcurrentChurn() throws InterruptedException {
+        PostgresChannelMessageBus node1 = node();
+        PostgresChannelMessageBus node2 = node();
+        RecordingListener sender = new RecordingListener();
+        node1.subscribe(2, sender);
+
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                RecordingListener handler = new RecordingListener();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 2000; i++) {
+                    node2.subscribe(2, handler);
+                    node2.unsubscribe(2, handler);
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        RecordingListener survivor = new RecordingListener();
+        node2.subscribe(2, survivor);
+        awaitListening(node1, node2, 2, sender, survivor);
+
+        // Tous partis : le noeud cesse d'écouter, puis un nouvel abonné le fait écouter à nouveau.
+        node2.unsubscribe(2, survivor);
+        RecordingListener late = new RecordingListener();
+        node2.subscribe(2, late);
+        awaitListening(node1, node2, 2, sender, late);
+    }
+
+    // Les changements de membres et d'utilisateurs validés sur un noeud sont retirés du cache et rechargés
+    // par les autres noeuds, et la suppression d'un canal y ferme les sessions.
+    @Test
+    void propagatesMembershipAndUserChangesToOtherNodes() {
+        MembershipIndex index1 = mock(MembershipIndex.class);
+        MembershipIndex index2 = mock(MembershipIndex.class);
+        UserSearchIndex search2 = mock(UserSearchIndex.class);
+        DynamicWebSocketHandler handler2 = mock(DynamicWebSocketHandler.class);
+        PostgresChannelMessageBus node1 = node();
+        PostgresChannelMessageBus node2 = node();
+        Cache cache2 = mock(Cache.class);
+        ClusterSync sync1 = new ClusterSync(node1, index1, mock(UserSearchIndex.class),
+                mock(DynamicWebSocketHandler.class), entityManagerFactory(mock(Cache.class)));
+        new ClusterSync(node2, index2, search2, handler2, entityManagerFactory(cache2));
+
+        // Le canal de synchronisation est écouté dès la connexion : on attend qu'un premier événement passe.
+        await(() -> {
+            sync1.onMembershipsChanged(new MembershipsChangedEvent(List.of(0)));
+            try {
+                verify(index2, timeout(200)).reloadChannel(0);
+                return true;
+            } catch (AssertionError e) {
+                return false;
+            }
+        });
+
+        sync1.onMembershipsChanged(new MembershipsChangedEvent(List.of(3, 4)));
+        verify(index2, timeout(5000)).reloadChannel(3);
+        verify(index2, timeout(5000)).reloadChannel(4);
+        verify(cache2, timeout(5000).atLeastOnce()).evict(Member.class);
+
+        sync1.onUsersChanged(new UsersChangedEvent(List.of(7)));
+        verify(cache2, timeout(5000)).evict(User.class, 7);
+        verify(search2, timeout(5000)).reload(7);
+        verify(index2, timeout(5000)).reloadUser(7);
+
+        sync1.onChannelsDeleted(new ChannelsDeletedEvent(List.of(5)));
+        verify(cache2, timeout(5000)).evict(Channel.class, 5);
+        verify(index2, timeout(5000)).removeChannel(5);
+        verify(handler2, timeout(5000)).onChannelsDeleted(any(ChannelsDeletedEvent.class));
+
+        // Le noeud émetteur a déjà mis à jour ses index : il ignore ses propres événements.
+        verify(index1, after(500).never()).reloadChannel(3);
+        verify(index1, never()).removeChannel(5);
+    }
+
+    // Méthodes privées :
+
+    private PostgresChannelMessageBus node() {
+        PGSimpleDataSource dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(postgres.getJdbcUrl());
+        dataSource.setUser(postgres.getUsername());
+        dataSource.setPassword(postgres.getPassword());
+
+        PostgresChannelMessageBus bus = new PostgresChannelMessageBus(dataSource);
+        ReflectionTestUtils.setField(bus, "pollIntervalMs", 50);
+        bus.start();
+        nodes.add(bus);
+        return bus;
+    }
+
+    private static EntityManagerFactory entityManagerFactory(Cache cache) {
+        EntityManagerFactory emf = mock(EntityManagerFactory.class);
+        when(emf.getCache()).thenReturn(cache);
+        return emf;
+    }
+
+    // Publie depuis 'from' jusqu'à ce que 'receiver' (abonné sur 'to') reçoive : le LISTEN de 'to' est alors actif.
+    private static void awaitListening(PostgresChannelMessageBus from, PostgresChannelMessageBus to, int channelId,
+                                       ChannelMessageListener origin, RecordingListener receiver) {
+        String ping = "ping-" + System.nanoTime();
+        await(() -> {
+            from.publish(channelId, ping, origin);
+            sleep(100);
+            return receiver.received.contains(ping);
+        });
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("délai d'attente dépassé").isLessThan(deadline);
+            sleep(20);
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class RecordingListener implements ChannelMessageListener {
+        final Queue<String> received = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public void onChannelMessage(int channelId, String payload) {
+            received.add(payload);
+        }
+    }
+}
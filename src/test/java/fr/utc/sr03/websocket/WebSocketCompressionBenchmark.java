@@ -0,0 +1,263 @@
+package fr.utc.sr03.websocket;
+
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.websocket.servlet.WebSocketServletAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.embedded.undertow.UndertowServletWebServerFactory;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Harnais de mesure de la compression "permessage-deflate" (WebSocketCompressionConfig), avec l'option
+// chat.websocket.deflate.enabled désactivée puis activée. Ce n'est pas un test JUnit : il se lance à la main, par exemple
+//   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+//   java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+//        fr.utc.sr03.websocket.WebSocketCompressionBenchmark [messages] [niveau zlib]
+// Pour chaque réglage, un serveur Undertow minimal (configuration WebSocket de Spring Boot, plus
+// WebSocketCompressionConfig) envoie des messages de discussion générés de façon déterministe à un client écrit
+// directement sur une socket. Le client propose l'extension comme un navigateur, vérifie la réponse du handshake
+// (le harnais échoue si l'extension est négociée alors qu'elle est désactivée, ou l'inverse), décompresse les trames,
+// puis compte les octets reçus sur la socket et le temps CPU du serveur (processus moins le thread du client).
+public final class WebSocketCompressionBenchmark {
+
+    private static final String[] WORDS = {"bonjour", "salut", "le", "la", "projet", "réunion", "demain", "à",
+            "10h", "canal", "message", "merci", "d'accord", "on", "se", "voit", "en", "salle", "TD", "rendu",
+            "avant", "vendredi", "qui", "peut", "relire", "ma", "partie", "?", "oui", "non", "je", "regarde", "ça"};
+
+    private WebSocketCompressionBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        String level = args.length > 1 ? args[1] : "6";
+
+        System.out.printf("messages=%d niveau=%s processeurs=%d%n",
+                messages, level, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%8s %10s %14s %14s %8s %14s %12s%n",
+                "deflate", "négociée", "octets reçus", "octets JSON", "ratio", "CPU serveur ms", "durée ms");
+
+        // Un premier passage de chaque réglage, non affiché, pour que le JIT ait compilé les deux chemins.
+        run(false, messages, level);
+        run(true, messages, level);
+
+        for (boolean deflate : new boolean[]{false, true}) {
+            Result r = run(deflate, messages, level);
+            System.out.printf("%8s %10s %14d %14d %8.2f %14.1f %12.1f%n",
+                    deflate ? "oui" : "non", r.negotiated ? "oui" : "non", r.wireBytes, r.payloadBytes,
+                    (double) r.payloadBytes / r.wireBytes, r.serverCpuNanos / 1e6, r.elapsedNanos / 1e6);
+        }
+    }
+
+    private record Result(boolean negotiated, long wireBytes, long payloadBytes, long serverCpuNanos,
+                          long elapsedNanos) {}
+
+    // Serveur minimal : "/bench" envoie 'chat.bench.messages' messages à chaque connexion, puis la ferme.
+    @Configuration
+    @EnableWebSocket
+    @ImportAutoConfiguration({PropertyPlaceholderAutoConfiguration.class,
+            ServletWebServerFactoryAutoConfiguration.class, DispatcherServletAutoConfiguration.class,
+            WebSocketServletAutoConfiguration.class})
+    @Import(WebSocketCompressionConfig.class)
+    static class BenchServer implements WebSocketConfigurer {
+
+        @Bean
+        public UndertowServletWebServerFactory undertowServletWebServerFactory() {
+            return new UndertowServletWebServerFactory(0);
+        }
+
+        @Override
+        public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+            registry.addHandler(new TextWebSocketHandler() {
+                @Override
+                public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                    int count = Integer.parseInt(System.getProperty("chat.bench.messages"));
+                    Random random = new Random(42);
+                    for (int i = 0; i < count; i++) {
+                        session.sendMessage(new TextMessage(chatMessage(random)));
+                    }
+                    session.close(CloseStatus.NORMAL);
+                }
+            }, "/bench").setAllowedOrigins("*");
+        }
+    }
+
+    // Méthodes privées :
+
+    private static Result run(boolean deflate, int messages, String level) throws Exception {
+        System.setProperty("chat.bench.messages", String.valueOf(messages));
+        try (ServletWebServerApplicationContext context = (ServletWebServerApplicationContext)
+                new SpringApplicationBuilder(BenchServer.class)
+                        .properties("chat.websocket.deflate.enabled=" + deflate,
+                                "chat.websocket.deflate.level=" + level,
+                                "spring.main.banner-mode=off", "logging.level.root=warn")
+                        .run()) {
+            Result result = receive(context.getWebServer().getPort(), messages);
+            if (result.negotiated != deflate) {
+                throw new IllegalStateException("Extension " + (result.negotiated ? "négociée" : "non négociée")
+                        + " avec chat.websocket.deflate.enabled=" + deflate);
+            }
+            return result;
+        }
+    }
+
+    // Client WebSocket minimal (RFC 6455 et 7692) : handshake, lecture et décompression des trames du serveur.
+    private static Result receive(int port, int expected) throws IOException, DataFormatException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long processCpuBefore = processCpuNanos();
+        long clientCpuBefore = threads.getCurrentThreadCpuTime();
+        long start = System.nanoTime();
+
+        try (Socket socket = new Socket("localhost", port)) {
+            byte[] nonce = new byte[16];
+            new Random().nextBytes(nonce);
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /bench HTTP/1.1\r\n"
+                    + "Host: localhost:" + port + "\r\n"
+                    + "Upgrade: websocket\r\n"
+                    + "Connection: Upgrade\r\n"
+                    + "Sec-WebSocket-Key: " + Base64.getEncoder().encodeToString(nonce) + "\r\n"
+                    + "Sec-WebSocket-Version: 13\r\n"
+                    + "Sec-WebSocket-Extensions: permessage-deflate; client_max_window_bits\r\n"
+                    + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            CountingInputStream counting = new CountingInputStream(socket.getInputStream());
+            DataInputStream in = new DataInputStream(counting);
+
+            // Réponse du handshake : on ne garde que l'extension acceptée par le serveur.
+            String status = readLine(in);
+            if (!status.startsWith("HTTP/1.1 101")) {
+                throw new IllegalStateException("Handshake refusé : " + status);
+            }
+            String extensions = "";
+            for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Extensions")) {
+                    extensions = line.substring(colon + 1).trim();
+                }
+            }
+            boolean negotiated = extensions.startsWith("permessage-deflate");
+            boolean resetContext = extensions.contains("server_no_context_takeover");
+            long handshakeBytes = counting.count;
+
+            Inflater inflater = new Inflater(true);
+            ByteArrayOutputStream message = new ByteArrayOutputStream();
+            byte[] inflated = new byte[64 * 1024];
+            boolean compressed = false;
+            long payloadBytes = 0;
+            int received = 0;
+            while (true) {
+                int b0 = in.readUnsignedByte();
+                int b1 = in.readUnsignedByte();
+                int opcode = b0 & 0x0F;
+                long length = b1 & 0x7F;
+                if (length == 126) length = in.readUnsignedShort();
+                else if (length == 127) length = in.readLong();
+                byte[] payload = new byte[(int) length];
+                in.readFully(payload);
+
+                if (opcode == 0x8) break;
+                if (opcode == 0x1 || opcode == 0x2) compressed = (b0 & 0x40) != 0;
+                else if (opcode != 0x0) continue;
+                message.write(payload);
+                if ((b0 & 0x80) == 0) continue;
+
+                // Fin du message : décompression (RFC 7692 §7.2.2, on rajoute la fin de bloc retirée par l'émetteur).
+                if (compressed) {
+                    message.write(new byte[]{0x00, 0x00, (byte) 0xFF, (byte) 0xFF});
+                    if (resetContext) inflater.reset();
+                    inflater.setInput(message.toByteArray());
+                    while (!inflater.needsInput()) {
+                        payloadBytes += inflater.inflate(inflated);
+                    }
+                } else {
+                    payloadBytes += message.size();
+                }
+                message.reset();
+                received++;
+            }
+            inflater.end();
+
+            if (received != expected) {
+                throw new IllegalStateException(received + " messages reçus sur " + expected);
+            }
+            long clientCpu = threads.getCurrentThreadCpuTime() - clientCpuBefore;
+            long serverCpu = processCpuNanos() - processCpuBefore - clientCpu;
+            return new Result(negotiated, counting.count - handshakeBytes, payloadBytes, serverCpu,
+                    System.nanoTime() - start);
+        }
+    }
+
+    private static String readLine(DataInputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c < 0) throw new IOException("Connexion fermée pendant le handshake");
+            if (c != '\r') line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+
+    // Message de discussion au format des clients : {"userID": n, "message": "..."}.
+    private static String chatMessage(Random random) {
+        StringBuilder text = new StringBuilder();
+        int words = 3 + random.nextInt(12);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) text.append(' ');
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return "{\"userID\":" + (1 + random.nextInt(40)) + ",\"message\":\"" + text + "\"}";
+    }
+
+    // Compte les octets lus sur la socket (en-têtes de trames compris).
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}